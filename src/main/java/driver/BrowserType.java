@@ -1,7 +1,11 @@
 package driver;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import org.jetbrains.annotations.NotNull;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.firefox.FirefoxDriver;
@@ -16,24 +20,36 @@ public enum BrowserType implements DriverSetup {
     /**
      * Firefox Driver.
      * @param capabilities list of desired capabilities
+     * @param executionProfile how the browser is run
      * @return FirefoxDriver object with the desired capabilities
      */
-    public RemoteWebDriver getWebDriverObject(DesiredCapabilities capabilities) {
-      return new FirefoxDriver(getOptions(capabilities));
+    public RemoteWebDriver getWebDriverObject(DesiredCapabilities capabilities,
+                                              ExecutionProfile executionProfile) {
+      return new FirefoxDriver(getOptions(capabilities, executionProfile));
+    }
+
+    public List<String> getArguments(ExecutionProfile executionProfile) {
+      List<String> arguments = new ArrayList<>(Arrays.asList("--width=1920", "--height=1080"));
+      arguments.addAll(executionProfile.getFirefoxArguments());
+      return arguments;
     }
 
     /**
      * Gets the default firefox options as a DesiredCapabilities object
      * to initialize a new RemoteWebDriver or FirefoxDriver.
      * @param capabilities the capabilities to be merged with the FirefoxDriver object
+     * @param executionProfile how the browser is run
      * @return a FirefoxOptions object to be used by the new() RemoteWebDriver or FirefoxDriver
      */
-    public DesiredCapabilities getBrowserCapabilities(DesiredCapabilities capabilities) {
-      capabilities.setCapability(FirefoxOptions.FIREFOX_OPTIONS, getOptions(capabilities));
+    public DesiredCapabilities getBrowserCapabilities(DesiredCapabilities capabilities,
+                                                      ExecutionProfile executionProfile) {
+      capabilities.setCapability(FirefoxOptions.FIREFOX_OPTIONS,
+          getOptions(capabilities, executionProfile));
       return capabilities;
     }
 
-    private @NotNull FirefoxOptions getOptions(@NotNull DesiredCapabilities capabilities) {
+    private @NotNull FirefoxOptions getOptions(@NotNull DesiredCapabilities capabilities,
+                                               @NotNull ExecutionProfile executionProfile) {
       FirefoxProfile testProfile = new FirefoxProfile();
       // disable web notifications
       testProfile.setPreference("dom.webnotifications.enabled", false);
@@ -44,11 +60,34 @@ public enum BrowserType implements DriverSetup {
       testProfile.setPreference("geo.provider.use_corelocation", true);
       testProfile.setPreference("geo.prompt.testing", true);
       testProfile.setPreference("geo.prompt.testing.allow", true);
+
+      // resource types blocked by the environment, see NetworkBlocking
+      if (NetworkBlocking.isTypeBlocked("image")) {
+        testProfile.setPreference("permissions.default.image", 2);
+      }
+      if (NetworkBlocking.isTypeBlocked("font")) {
+        // the @font-face fonts are not downloaded
+        testProfile.setPreference("gfx.downloadable_fonts.enabled", false);
+      }
+      if (NetworkBlocking.isTypeBlocked("media")) {
+        // no preload (1 is none) and no autoplay: media is only downloaded when played
+        testProfile.setPreference("media.preload.default", 1);
+        testProfile.setPreference("media.preload.auto", 1);
+        testProfile.setPreference("media.autoplay.default", 5);
+      }
+      executionProfile.getFirefoxPreferences().forEach((name, value) -> {
+        if (value instanceof Boolean) {
+          testProfile.setPreference(name, (Boolean) value);
+        } else if (value instanceof Integer) {
+          testProfile.setPreference(name, (Integer) value);
+        } else {
+          testProfile.setPreference(name, String.valueOf(value));
+        }
+      });
       capabilities.setCapability(FirefoxDriver.PROFILE, testProfile);
 
       FirefoxOptions options = new FirefoxOptions();
-      options.addArguments("--width=1920");
-      options.addArguments("--height=1080");
+      options.addArguments(getArguments(executionProfile));
       options.merge(capabilities);
       return options;
     }
@@ -57,40 +96,89 @@ public enum BrowserType implements DriverSetup {
     /**
      * Chrome Driver.
      * @param capabilities list of desired capabilities
+     * @param executionProfile how the browser is run
      * @return FirefoxDriver object with the desired capabilities
      */
-    public RemoteWebDriver getWebDriverObject(DesiredCapabilities capabilities) {
-      return new ChromeDriver(getOptions(capabilities));
+    public RemoteWebDriver getWebDriverObject(DesiredCapabilities capabilities,
+                                              ExecutionProfile executionProfile) {
+      return new ChromeDriver(getOptions(capabilities, executionProfile));
+    }
+
+    public List<String> getArguments(ExecutionProfile executionProfile) {
+      List<String> arguments = new ArrayList<>(Arrays.asList("window-size=1920,1080",
+          "disable-extensions", "disable-popup-blocking", "no-sandbox", "acceptSslCerts=true",
+          "unexpectedAlertBehaviour=accept", "no-default-browser-check"));
+      arguments.addAll(executionProfile.getChromeArguments());
+      return arguments;
     }
 
     /**
      * Gets the default ChromeOptions as DesiredCapabilities to initialize a new
      * RemoteWebDriver or ChromeDriver.
      * @param capabilities the capabilities to be merged with the ChromeOptions object
+     * @param executionProfile how the browser is run
      * @return a ChromeOptions object to be used by the new() RemoteWebDriver or ChromeDriver
      */
-    public DesiredCapabilities getBrowserCapabilities(DesiredCapabilities capabilities) {
-      capabilities.setCapability(ChromeOptions.CAPABILITY, getOptions(capabilities));
+    public DesiredCapabilities getBrowserCapabilities(DesiredCapabilities capabilities,
+                                                      ExecutionProfile executionProfile) {
+      capabilities.setCapability(ChromeOptions.CAPABILITY,
+          getOptions(capabilities, executionProfile));
       return capabilities;
     }
 
-    private @NotNull ChromeOptions getOptions(DesiredCapabilities capabilities) {
+    private @NotNull ChromeOptions getOptions(DesiredCapabilities capabilities,
+                                              ExecutionProfile executionProfile) {
       HashMap<String, Object> chromePreferences = new HashMap<>();
       chromePreferences.put("profile.password_manager_enabled", false);
       chromePreferences.put("credentials_enable_service", false);
+      if (NetworkBlocking.isTypeBlocked("image")) {
+        // the other blocked resources are set with DevTools, see NetworkBlocking
+        chromePreferences.put("profile.managed_default_content_settings.images", 2);
+      }
 
       ChromeOptions options = new ChromeOptions();
-      options.addArguments("window-size=1920,1080");
-      options.addArguments("disable-extensions");
-      options.addArguments("disable-popup-blocking");
-      options.addArguments("no-sandbox");
-      options.addArguments("acceptSslCerts=true");
-      options.addArguments("unexpectedAlertBehaviour=accept");
-      options.addArguments("no-default-browser-check");
+      options.addArguments(getArguments(executionProfile));
       options.setExperimentalOption("excludeSwitches", new String[]{"enable-automation"});
       options.setExperimentalOption("prefs", chromePreferences);
       options.merge(capabilities);
       return options;
     }
+  },
+  CHROME_CDP {
+    /**
+     * Chrome Driver with a persistent DevTools connection to the page, see DevToolsConnection.
+     * The page objects keep using WebDriver, and the page readiness and the network commands use
+     * the DevTools connection.
+     * @param capabilities list of desired capabilities
+     * @param executionProfile how the browser is run
+     * @return ChromeDriver object with the desired capabilities
+     */
+    public RemoteWebDriver getWebDriverObject(DesiredCapabilities capabilities,
+                                              ExecutionProfile executionProfile) {
+      RemoteWebDriver webDriver = CHROME.getWebDriverObject(capabilities, executionProfile);
+      try {
+        DevToolsConnection.open(webDriver);
+      } catch (WebDriverException e) {
+        webDriver.quit();
+        throw e;
+      }
+      return webDriver;
+    }
+
+    public List<String> getArguments(ExecutionProfile executionProfile) {
+      return CHROME.getArguments(executionProfile);
+    }
+
+    /**
+     * Gets the ChromeOptions as DesiredCapabilities. The browsers started on a Selenium Grid hub
+     * have no DevTools connection, their debugger address is only reachable from the node.
+     * @param capabilities the capabilities to be merged with the ChromeOptions object
+     * @param executionProfile how the browser is run
+     * @return a ChromeOptions object to be used by the new() RemoteWebDriver
+     */
+    public DesiredCapabilities getBrowserCapabilities(DesiredCapabilities capabilities,
+                                                      ExecutionProfile executionProfile) {
+      return CHROME.getBrowserCapabilities(capabilities, executionProfile);
+    }
   }
 }
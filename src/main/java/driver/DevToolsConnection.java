@@ -0,0 +1,355 @@
+package driver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.SessionId;
+
+/**
+ * Persistent DevTools WebSocket to the page of a Chrome browser started with
+ * BrowserType.CHROME_CDP, open next to the WebDriver session. Commands are sent without waiting
+ * for the previous ones to finish, and their responses are matched by id, so several commands cost
+ * a single round trip. The events of the browser, such as Page.loadEventFired, are pushed to the
+ * listeners, and PageEvents turns them into load, network idle and DOM stable waits.
+ */
+public final class DevToolsConnection implements AutoCloseable {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(DevToolsConnection.class);
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+  private static final Duration COMMAND_TIMEOUT = Duration.ofSeconds(30);
+
+  private static final HttpClient httpClient = HttpClient.newBuilder()
+      .connectTimeout(CONNECT_TIMEOUT).build();
+
+  /**
+   * The open connection of each browser session.
+   */
+  private static final Map<SessionId, DevToolsConnection> connections = new ConcurrentHashMap<>();
+
+  private final AtomicLong nextId = new AtomicLong(1);
+
+  private final Map<Long, CompletableFuture<JsonNode>> pendingCommands =
+      new ConcurrentHashMap<>();
+
+  private final Map<String, List<Consumer<JsonNode>>> listeners = new ConcurrentHashMap<>();
+
+  private final PageEvents pageEvents;
+
+  private SessionId sessionId;
+
+  private WebSocket webSocket;
+
+  private DevToolsConnection() {
+    pageEvents = new PageEvents(this);
+  }
+
+  /**
+   * Opens the DevTools connection of a new Chrome browser, and starts listening to its page
+   * events. The debugger address of the browser is read from its goog:chromeOptions capability.
+   * @param webDriver the new browser
+   * @return DevToolsConnection
+   * @throws WebDriverException if the browser has no DevTools endpoint or cannot be reached
+   */
+  static DevToolsConnection open(@NotNull RemoteWebDriver webDriver) {
+    Object chromeOptions = webDriver.getCapabilities().getCapability("goog:chromeOptions");
+    Object debuggerAddress = chromeOptions instanceof Map
+        ? ((Map<?, ?>) chromeOptions).get("debuggerAddress") : null;
+    if (null == debuggerAddress) {
+      throw new WebDriverException("The browser has no DevTools debugger address");
+    }
+    DevToolsConnection connection = new DevToolsConnection();
+    connection.connect(getPageWebSocketUrl(debuggerAddress.toString()));
+    try {
+      connection.pageEvents.start();
+    } catch (WebDriverException e) {
+      connection.close();
+      throw e;
+    }
+    connection.sessionId = webDriver.getSessionId();
+    connections.put(connection.sessionId, connection);
+    logger.debug("DevTools connection open for session {} at {}", webDriver.getSessionId(),
+        debuggerAddress);
+    return connection;
+  }
+
+  /**
+   * Gets the DevTools connection of a browser.
+   * @param webDriver the browser
+   * @return the connection, or null if the browser was not started with BrowserType.CHROME_CDP
+   */
+  @Nullable
+  public static DevToolsConnection of(@NotNull RemoteWebDriver webDriver) {
+    SessionId sessionId = webDriver.getSessionId();
+    return null == sessionId ? null : connections.get(sessionId);
+  }
+
+  /**
+   * Closes the DevTools connection of a browser that is being quit, if it has one.
+   * @param webDriver the browser
+   */
+  static void closeFor(@NotNull RemoteWebDriver webDriver) {
+    SessionId sessionId = webDriver.getSessionId();
+    DevToolsConnection connection = null == sessionId ? null : connections.remove(sessionId);
+    if (null != connection) {
+      connection.close();
+    }
+  }
+
+  public PageEvents getPageEvents() {
+    return pageEvents;
+  }
+
+  /**
+   * Sends a command without waiting for its response.
+   * @param method the DevTools method, like Page.navigate
+   * @param parameters the parameters of the method
+   * @return the future result of the command, completed with a WebDriverException on error
+   */
+  public CompletableFuture<JsonNode> send(@NotNull String method,
+                                          @NotNull Map<String, Object> parameters) {
+    long id = nextId.getAndIncrement();
+    CompletableFuture<JsonNode> result = new CompletableFuture<>();
+    pendingCommands.put(id, result);
+    ObjectNode message = mapper.createObjectNode();
+    message.put("id", id);
+    message.put("method", method);
+    message.set("params", mapper.valueToTree(parameters));
+    String text = message.toString();
+    // a WebSocket accepts one outgoing message at a time, the callers may be on several threads
+    synchronized (this) {
+      try {
+        webSocket.sendText(text, true).join();
+      } catch (CompletionException e) {
+        fail(id, new WebDriverException("Unable to send the DevTools command " + method,
+            e.getCause()));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sends a command and waits for its result.
+   * @param method the DevTools method, like Page.navigate
+   * @param parameters the parameters of the method
+   * @return the result of the command
+   * @throws WebDriverException if the command fails or does not answer in time
+   */
+  public JsonNode execute(@NotNull String method, @NotNull Map<String, Object> parameters) {
+    return await(send(method, parameters));
+  }
+
+  /**
+   * Waits for the result of a command sent with send().
+   * @param result the future result of the command
+   * @return the result of the command
+   * @throws WebDriverException if the command fails or does not answer in time
+   */
+  public static JsonNode await(@NotNull CompletableFuture<JsonNode> result) {
+    return await(result, COMMAND_TIMEOUT);
+  }
+
+  /**
+   * Waits for the result of a command that takes longer than usual, such as a script that waits
+   * for the page.
+   * @param result the future result of the command
+   * @param timeout maximum time to wait
+   * @return the result of the command
+   * @throws WebDriverException if the command fails or does not answer in time
+   */
+  public static JsonNode await(@NotNull CompletableFuture<JsonNode> result,
+                               @NotNull Duration timeout) {
+    try {
+      return result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof WebDriverException) {
+        throw (WebDriverException) e.getCause();
+      }
+      throw new WebDriverException(e.getCause());
+    } catch (TimeoutException e) {
+      throw new WebDriverException("The DevTools command did not answer in time", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WebDriverException("Interrupted waiting for a DevTools command", e);
+    }
+  }
+
+  /**
+   * Calls the listener each time the browser sends the event.
+   * @param event the DevTools event, like Page.loadEventFired
+   * @param listener receives the parameters of the event
+   */
+  public void addListener(@NotNull String event, @NotNull Consumer<JsonNode> listener) {
+    listeners.computeIfAbsent(event, name -> new CopyOnWriteArrayList<>()).add(listener);
+  }
+
+  /**
+   * Stops calling a listener added with addListener().
+   * @param event the DevTools event
+   * @param listener the listener to remove
+   */
+  public void removeListener(@NotNull String event, @NotNull Consumer<JsonNode> listener) {
+    List<Consumer<JsonNode>> eventListeners = listeners.get(event);
+    if (null != eventListeners) {
+      eventListeners.remove(listener);
+    }
+  }
+
+  /**
+   * Closes the connection and forgets it, so of() does not return a closed connection. Also
+   * called when the browser closes the WebSocket or the connection fails.
+   */
+  @Override
+  public void close() {
+    if (null != sessionId) {
+      connections.remove(sessionId, this);
+    }
+    WebDriverException closed = new WebDriverException("The DevTools connection is closed");
+    pendingCommands.keySet().forEach(id -> fail(id, closed));
+    if (null != webSocket && !webSocket.isOutputClosed()) {
+      webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "").exceptionally(error -> null);
+    }
+  }
+
+  private void connect(URI webSocketUrl) {
+    try {
+      webSocket = httpClient.newWebSocketBuilder()
+          .connectTimeout(CONNECT_TIMEOUT)
+          .buildAsync(webSocketUrl, new MessageListener())
+          .get(CONNECT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (ExecutionException | TimeoutException e) {
+      throw new WebDriverException("Unable to open the DevTools connection " + webSocketUrl, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WebDriverException("Interrupted opening the DevTools connection", e);
+    }
+  }
+
+  /**
+   * Gets the WebSocket URL of the first page of the browser from its /json/list endpoint.
+   */
+  private static URI getPageWebSocketUrl(String debuggerAddress) {
+    try {
+      HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder()
+              .uri(URI.create("http://" + debuggerAddress + "/json/list"))
+              .timeout(CONNECT_TIMEOUT).build(),
+          HttpResponse.BodyHandlers.ofString());
+      for (JsonNode target : mapper.readTree(response.body())) {
+        if ("page".equals(target.path("type").asText())
+            && target.hasNonNull("webSocketDebuggerUrl")) {
+          return URI.create(target.get("webSocketDebuggerUrl").asText());
+        }
+      }
+      throw new WebDriverException("The browser has no page to connect to at " + debuggerAddress);
+    } catch (IOException e) {
+      throw new WebDriverException("Unable to list the DevTools targets of " + debuggerAddress, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WebDriverException("Interrupted listing the DevTools targets", e);
+    }
+  }
+
+  private void fail(long id, WebDriverException error) {
+    CompletableFuture<JsonNode> result = pendingCommands.remove(id);
+    if (null != result) {
+      result.completeExceptionally(error);
+    }
+  }
+
+  private void dispatch(String text) {
+    JsonNode message;
+    try {
+      message = mapper.readTree(text);
+    } catch (IOException e) {
+      logger.warn("Invalid DevTools message: {}", text, e);
+      return;
+    }
+    if (message.has("id")) {
+      long id = message.get("id").asLong();
+      if (message.has("error")) {
+        fail(id, new WebDriverException("DevTools command failed: " + message.get("error")));
+        return;
+      }
+      CompletableFuture<JsonNode> result = pendingCommands.remove(id);
+      if (null != result) {
+        result.complete(message.path("result"));
+      }
+      return;
+    }
+    List<Consumer<JsonNode>> eventListeners = listeners.get(message.path("method").asText());
+    if (null != eventListeners) {
+      JsonNode parameters = message.path("params");
+      for (Consumer<JsonNode> listener : eventListeners) {
+        try {
+          listener.accept(parameters);
+        } catch (RuntimeException e) {
+          logger.warn("DevTools listener of {} failed", message.path("method").asText(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Joins the fragments of each message and dispatches the complete messages in order.
+   */
+  private final class MessageListener implements WebSocket.Listener {
+
+    private final StringBuilder message = new StringBuilder();
+
+    @Override
+    public CompletionStage<?> onText(WebSocket socket, CharSequence data, boolean last) {
+      message.append(data);
+      if (last) {
+        String text = message.toString();
+        message.setLength(0);
+        dispatch(text);
+      }
+      socket.request(1);
+      return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket socket, int statusCode, String reason) {
+      logger.debug("DevTools connection closed: {} {}", statusCode, reason);
+      close();
+      return null;
+    }
+
+    @Override
+    public void onError(WebSocket socket, Throwable error) {
+      logger.debug("DevTools connection failed", error);
+      close();
+    }
+  }
+}
@@ -1,9 +1,12 @@
 package driver;
 
 import environment.EnvironmentConfig;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import metrics.MetricsExporter;
+import metrics.StepMetrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.ThreadContext;
@@ -11,6 +14,10 @@ import org.openqa.selenium.remote.RemoteWebDriver;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.AfterSuite;
 import org.testng.annotations.BeforeSuite;
+import proxy.CachingProxy;
+import utils.OutputDirectory;
+import utils.TestAccountProvider;
+import utils.TestReporter;
 
 public class DriverBase {
 
@@ -32,6 +39,21 @@ public class DriverBase {
    */
   private static ThreadLocal<DriverFactory> driverThread;
 
+  /**
+   * Pool of started browsers shared by all the threads. Keeps the browsers alive between tests.
+   */
+  private static SessionPool sessionPool;
+
+  /**
+   * Starts browsers in the background while the suite is being set up.
+   */
+  private static SessionPreWarmer sessionPreWarmer;
+
+  /**
+   * Local HTTP cache shared by all the browsers, started with -Dproxy=true.
+   */
+  private static CachingProxy cachingProxy;
+
   /**
    * Protected constructor.
    */
@@ -47,7 +69,18 @@ public class DriverBase {
   public static void startSuite() {
 
     ThreadContext.put(THREAD_ID, Thread.currentThread().getName());
+    // the browsers are configured with the network settings of the environment
     EnvironmentConfig.initializeEnvironment();
+    if (Boolean.getBoolean("proxy")) {
+      startCachingProxy();
+    }
+    sessionPool = new SessionPool(DriverFactory::instantiateWebDriver);
+
+    // Starts one browser per test thread (or -DpreWarmSessions) in the background, so the
+    // browser start up overlaps with the test discovery
+    sessionPreWarmer = new SessionPreWarmer(sessionPool);
+    sessionPreWarmer.warm(new DriverFactory(sessionPool).getSessionKey(),
+        Integer.getInteger("preWarmSessions", Integer.getInteger("threads", 1)));
 
     // Instantiates and stores the WebDriver into the ThreadLocal variable
     driverThread = ThreadLocal.withInitial(() -> {
@@ -62,12 +95,35 @@ public class DriverBase {
       ThreadContext.put(THREAD_ID, Thread.currentThread().getName());
 
       logger.trace("Instantiate WebDriver");
-      DriverFactory webDriverThread = new DriverFactory();
+      DriverFactory webDriverThread = new DriverFactory(sessionPool);
       webDriverThreadPool.add(webDriverThread);
       return webDriverThread;
     });
   }
 
+  private static void startCachingProxy() {
+    // the proxy listens on this machine, where the browsers of the grid nodes cannot reach it
+    if (null != GridDispatcher.getInstance()) {
+      logger.warn("The caching proxy is not started, the Selenium Grid browsers connect directly");
+      return;
+    }
+    try {
+      CachingProxy proxy = CachingProxy.fromSystemProperties();
+      proxy.start(Integer.getInteger("proxyPort", 0));
+      cachingProxy = proxy;
+    } catch (IOException e) {
+      logger.error("Unable to start the caching proxy, the browsers connect directly", e);
+    }
+  }
+
+  /**
+   * Gets the caching proxy of the suite.
+   * @return the proxy, or null if the browsers connect directly
+   */
+  static CachingProxy getCachingProxy() {
+    return cachingProxy;
+  }
+
   /**
    * Gets the WebDriver from the DriverFactory using a singleton pattern.
    * @return the instantiated WebDriver
@@ -89,20 +145,31 @@ public class DriverBase {
   }
 
   /**
-   * Quit the browser between tests.
+   * Gets the execution profile of the browser of the current test.
+   * @return ExecutionProfile
+   */
+  public static ExecutionProfile getExecutionProfile() {
+    return driverThread.get().getExecutionProfile();
+  }
+
+  /**
+   * Gives the browser back to the session pool between tests. The pool resets it for the next
+   * test instead of quitting it.
    */
   @AfterMethod(alwaysRun = true)
-  public static void quitWebDriver() {
+  public static void releaseWebDriver() {
     try {
-      logger.trace("Quit WebDriver");
-      driverThread.get().quitDriver();
+      logger.trace("Release WebDriver");
+      driverThread.get().releaseDriver();
     } catch (Exception ex) {
-      logger.error("Unable to quit WebDriver", ex);
+      logger.error("Unable to release WebDriver", ex);
     }
   }
 
   /**
-   * Safely quits all the WebDrivers in the ThreadPool.
+   * Safely quits all the WebDrivers in the ThreadPool and the idle ones in the session pool,
+   * exports the step timings of the suite, waits for the pending screenshots, closes the streaming
+   * report, reports the test accounts that were never released and stops the caching proxy.
    */
   @AfterSuite(alwaysRun = true)
   public static void finishSuite() {
@@ -116,12 +183,29 @@ public class DriverBase {
     */
     ThreadContext.put(THREAD_ID, Thread.currentThread().getName());
 
+    sessionPreWarmer.finish();
+    MetricsExporter.export(StepMetrics.merge(), OutputDirectory.resolve("metrics"));
+    TestReporter.finishScreenshots();
+    TestReporter.finishReport();
+    TestAccountProvider.releaseLeakedLeases();
+
     int index = 0;
     for (DriverFactory webDriverThread : webDriverThreadPool) {
       logger.trace("Quit WebDriver {}", index);
       index++;
       webDriverThread.quitDriver();
     }
+    logger.trace("Quit idle WebDrivers of the session pool");
+    sessionPool.shutdown();
+    GridDispatcher gridDispatcher = GridDispatcher.getInstance();
+    if (null != gridDispatcher) {
+      gridDispatcher.logStatistics();
+    }
+    ResourceGovernor.getInstance().logStatistics();
+    if (null != cachingProxy) {
+      cachingProxy.stop(OutputDirectory.resolve("metrics"));
+      cachingProxy = null;
+    }
     logger.trace("Remove WebDriver from ThreadLocal");
     driverThread.remove();
   }
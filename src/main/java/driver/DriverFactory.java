@@ -2,20 +2,38 @@ package driver;
 
 import static driver.BrowserType.CHROME;
 
+import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+import proxy.CachingProxy;
+import utils.FailureVideoRecorder;
 
 public class DriverFactory {
 
   /**
-   * The WebDriver used in the tests.
+   * Maximum time an asynchronous script can run. Must be longer than the page readiness waits,
+   * which resolve their scripts by themselves when they time out.
    */
-  private RemoteWebDriver webDriver;
+  private static final int TIMEOUT_TO_RUN_SCRIPT = 30;
 
   /**
-   * Stores the selected driver type to use on the tests. Can be CHROME or FIREFOX.
+   * The browser borrowed from the session pool, null until the first call to getDriver().
+   */
+  private PooledSession session;
+
+  /**
+   * The pool the browsers are borrowed from.
+   */
+  private final SessionPool sessionPool;
+
+  /**
+   * Stores the selected driver type to use on the tests. Can be CHROME, CHROME_CDP or FIREFOX.
    */
   private final BrowserType selectedBrowserType;
 
@@ -27,24 +45,27 @@ public class DriverFactory {
   /**
    * Stores the OS name.
    */
-  private final String operatingSystem = System.getProperty("os.name").toUpperCase();
+  private static final String operatingSystem = System.getProperty("os.name").toUpperCase();
 
   /**
    * Stores the System Architecture. Most of the times is x86_64.
    */
-  private final String systemArchitecture = System.getProperty("os.arch");
+  private static final String systemArchitecture = System.getProperty("os.arch");
 
   /**
    * Java version.
    */
-  private final String javaVersion = System.getProperty("java.version");
+  private static final String javaVersion = System.getProperty("java.version");
 
 
   /**
    * Constructor of the DriverFactory class. Reads the browser value passed
    * as an argument on the command line.
+   * @param sessionPool the pool the browsers are borrowed from
    */
-  public DriverFactory() {
+  public DriverFactory(SessionPool sessionPool) {
+    this.sessionPool = sessionPool;
+
     // By default, the driver type is CHROME
     BrowserType browserType = CHROME;
 
@@ -60,15 +81,30 @@ public class DriverFactory {
 
   /**
    * Gets an instantiated WebDriver of the type defined in the browser argument of the command
-   * line. If there is a WebDriver already instantiated it returns that one.
+   * line. If there is a WebDriver already borrowed from the session pool it returns that one.
    * @return an instantiated WebDriver object
    */
   public RemoteWebDriver getDriver() {
-    if (null == webDriver) {
-      logger.trace("Starting WebDriver");
-      instantiateWebDriver(selectedBrowserType);
+    if (null == session) {
+      logger.trace("Borrowing WebDriver from the session pool");
+      session = sessionPool.acquire(getSessionKey());
+      // the last seconds of the test are kept in memory, for the video of a failure
+      FailureVideoRecorder.start(session.getDriver());
+    }
+    return session.getDriver();
+  }
+
+  /**
+   * Gives the WebDriver back to the session pool so the next test can reuse it.
+   */
+  public void releaseDriver() {
+    logger.trace("Releasing Webdriver");
+    if (null != session) {
+      FailureVideoRecorder.discard();
+      sessionPool.release(session);
+      session = null;
+      logger.trace("Webdriver is back in the session pool and set to null");
     }
-    return webDriver;
   }
 
   /**
@@ -76,15 +112,16 @@ public class DriverFactory {
    */
   public void quitDriver() {
     logger.trace("Closing Webdriver");
-    if (null != webDriver) {
-      webDriver.quit();
-      webDriver = null;
+    if (null != session) {
+      FailureVideoRecorder.discard();
+      sessionPool.discard(session);
+      session = null;
       logger.trace("Webdriver is closed and set to null");
     }
   }
 
   /**
-   * Gets the driver type. Can be CHROME or FIREFOX
+   * Gets the driver type. Can be CHROME, CHROME_CDP or FIREFOX
    * @return BrowserType
    */
   public BrowserType getBrowserType() {
@@ -92,26 +129,86 @@ public class DriverFactory {
     return selectedBrowserType;
   }
 
-  private void instantiateWebDriver(BrowserType browserType) {
-    logger.info("Local Operating System: {}", operatingSystem);
-    logger.info("Local Architecture: {}", systemArchitecture);
-    logger.info("Java Version: {}", javaVersion);
-    logger.info("Selected Browser: {}", selectedBrowserType);
-
+  /**
+   * Gets the key of the browser sessions this factory needs from the session pool.
+   * @return SessionKey
+   */
+  public SessionKey getSessionKey() {
     DesiredCapabilities desiredCapabilities = new DesiredCapabilities();
 
-    // set template of the screen recording filename
-    desiredCapabilities.setCapability("testFileNameTemplate", "{testName}");
+    CachingProxy cachingProxy = DriverBase.getCachingProxy();
+    if (null != cachingProxy) {
+      desiredCapabilities.setCapability(CapabilityType.PROXY, cachingProxy.getSeleniumProxy());
+      // the proxy decrypts HTTPS with its own self-signed certificate
+      desiredCapabilities.setCapability(CapabilityType.ACCEPT_INSECURE_CERTS,
+          cachingProxy.isDecryptingHttps());
+    }
+
+    return new SessionKey(selectedBrowserType, selectExecutionProfile(), desiredCapabilities);
+  }
+
+  /**
+   * Gets the execution profile of the browser borrowed by this factory. Before the browser is
+   * borrowed, it is the profile that getSessionKey() selects.
+   * @return ExecutionProfile
+   */
+  public ExecutionProfile getExecutionProfile() {
+    return null != session ? session.getKey().getExecutionProfile() : selectExecutionProfile();
+  }
 
-    // not using selenium grid, local browser
-    webDriver = browserType.getWebDriverObject(desiredCapabilities);
+  /**
+   * Selects the execution profile of the test running in the current thread by its groups.
+   * Outside of a test, such as when the browsers are pre-warmed, it is the profile of the run.
+   */
+  private ExecutionProfile selectExecutionProfile() {
+    ITestResult testResult = Reporter.getCurrentTestResult();
+    return null == testResult ? ExecutionProfile.select()
+        : ExecutionProfile.select(testResult.getMethod().getGroups());
+  }
+
+  /**
+   * Starts a new browser. Used by the session pool when there is no idle browser to reuse.
+   * @param sessionKey the browser type and capabilities of the new browser
+   * @return the started WebDriver
+   */
+  static RemoteWebDriver instantiateWebDriver(SessionKey sessionKey) {
+    logger.info("Local Operating System: {}", operatingSystem);
+    logger.info("Local Architecture: {}", systemArchitecture);
+    logger.info("Java Version: {}", javaVersion);
+    logger.info("Selected Browser: {}", sessionKey.getBrowserType());
+    logger.info("Execution profile: {}", sessionKey.getExecutionProfile().getName());
+
+    // remote browser when -Dgrid.hubs is set, local browser otherwise
+    GridDispatcher gridDispatcher = GridDispatcher.getInstance();
+    RemoteWebDriver webDriver = null != gridDispatcher ? gridDispatcher.startSession(sessionKey)
+        : startLocalWebDriver(sessionKey);
+    webDriver.manage().timeouts().setScriptTimeout(TIMEOUT_TO_RUN_SCRIPT, TimeUnit.SECONDS);
+    try {
+      NetworkBlocking.start(webDriver);
+    } catch (WebDriverException e) {
+      logger.warn("Unable to block the network resources of the new browser", e);
+    }
 
-    
     logger.info("Browser version: {}", webDriver.getCapabilities()
         .getCapability("browserVersion"));
 
     String userAgent = (String) webDriver.executeScript("return navigator.userAgent;");
 
     logger.info("User agent: {}", userAgent);
+    return webDriver;
+  }
+
+  /**
+   * Starts a browser on this machine once the resource governor admits it.
+   */
+  private static RemoteWebDriver startLocalWebDriver(SessionKey sessionKey) {
+    ResourceGovernor resourceGovernor = ResourceGovernor.getInstance();
+    resourceGovernor.admit(sessionKey);
+    try {
+      return sessionKey.getBrowserType()
+          .getWebDriverObject(sessionKey.getCapabilities(), sessionKey.getExecutionProfile());
+    } finally {
+      resourceGovernor.finishStart();
+    }
   }
 }
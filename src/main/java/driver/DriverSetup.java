@@ -1,8 +1,26 @@
 package driver;
 
+import java.util.List;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
 
 public interface DriverSetup {
-  RemoteWebDriver getWebDriverObject(DesiredCapabilities capabilities);
+  RemoteWebDriver getWebDriverObject(DesiredCapabilities capabilities,
+                                     ExecutionProfile executionProfile);
+
+  /**
+   * Gets the command line arguments the browser is started with in the given profile.
+   * @param executionProfile how the browser is run
+   * @return List of arguments
+   */
+  List<String> getArguments(ExecutionProfile executionProfile);
+
+  /**
+   * Gets the options of the browser as capabilities, to start it on a Selenium Grid hub.
+   * @param capabilities the capabilities to be merged with the options of the browser
+   * @param executionProfile how the browser is run
+   * @return DesiredCapabilities
+   */
+  DesiredCapabilities getBrowserCapabilities(DesiredCapabilities capabilities,
+                                             ExecutionProfile executionProfile);
 }
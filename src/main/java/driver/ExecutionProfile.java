@@ -0,0 +1,140 @@
+package driver;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * How the browsers are run: headed, headless, or headless with fewer features to use less memory
+ * per browser. Selected for the whole run with -DexecutionProfile, and for the tests of a group
+ * with -DexecutionProfile.[group], for instance -DexecutionProfile.smoke=minimal.
+ */
+public enum ExecutionProfile {
+
+  /**
+   * A full browser window. The default profile.
+   */
+  HEADED(Collections.emptyList(), Collections.emptyList(), Collections.emptyMap()),
+
+  /**
+   * The legacy headless mode of Chrome, a separate and lighter implementation of the browser.
+   */
+  HEADLESS(Arrays.asList("headless", "disable-gpu"), Collections.singletonList("-headless"),
+      Collections.emptyMap()),
+
+  /**
+   * The headless mode of Chrome 109+, the same browser as the headed one without a window.
+   */
+  HEADLESS_NEW(Collections.singletonList("headless=new"), Collections.singletonList("-headless"),
+      Collections.emptyMap()),
+
+  /**
+   * Headless, rendering with the CPU instead of the GPU, for the runners without GPU.
+   */
+  SOFTWARE_RENDERING(
+      Arrays.asList("headless=new", "disable-gpu", "use-angle=swiftshader",
+          "enable-unsafe-swiftshader"),
+      Collections.singletonList("-headless"),
+      preferences("layers.acceleration.disabled", true, "gfx.webrender.software", true)),
+
+  /**
+   * Headless with software rendering and without the background services, extensions and
+   * features the tests never use.
+   */
+  MINIMAL(
+      Arrays.asList("headless=new", "disable-gpu", "use-angle=swiftshader",
+          "enable-unsafe-swiftshader", "disable-dev-shm-usage", "disable-background-networking",
+          "disable-component-update", "disable-default-apps", "disable-sync", "mute-audio",
+          "no-first-run", "disable-features=Translate,MediaRouter,OptimizationHints"),
+      Collections.singletonList("-headless"),
+      preferences("layers.acceleration.disabled", true, "gfx.webrender.software", true,
+          "app.update.enabled", false, "extensions.update.enabled", false,
+          "datareporting.healthreport.uploadEnabled", false, "toolkit.telemetry.enabled", false,
+          "browser.safebrowsing.malware.enabled", false,
+          "browser.safebrowsing.phishing.enabled", false, "network.prefetch-next", false,
+          "media.autoplay.default", 5));
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(ExecutionProfile.class);
+
+  private static final String PROPERTY = "executionProfile";
+
+  private final List<String> chromeArguments;
+
+  private final List<String> firefoxArguments;
+
+  private final Map<String, Object> firefoxPreferences;
+
+  ExecutionProfile(List<String> chromeArguments, List<String> firefoxArguments,
+                   Map<String, Object> firefoxPreferences) {
+    this.chromeArguments = Collections.unmodifiableList(chromeArguments);
+    this.firefoxArguments = Collections.unmodifiableList(firefoxArguments);
+    this.firefoxPreferences = Collections.unmodifiableMap(firefoxPreferences);
+  }
+
+  public List<String> getChromeArguments() {
+    return chromeArguments;
+  }
+
+  public List<String> getFirefoxArguments() {
+    return firefoxArguments;
+  }
+
+  public Map<String, Object> getFirefoxPreferences() {
+    return firefoxPreferences;
+  }
+
+  /**
+   * Selects the profile of a test: the profile of the first of its groups that has one, or the
+   * profile of the run, HEADED by default.
+   * @param groups the groups of the test method
+   * @return ExecutionProfile
+   */
+  public static ExecutionProfile select(@NotNull String... groups) {
+    for (String group : groups) {
+      String name = System.getProperty(PROPERTY + "." + group);
+      if (null != name) {
+        return fromName(name);
+      }
+    }
+    return fromName(System.getProperty(PROPERTY, HEADED.getName()));
+  }
+
+  /**
+   * Gets the profile with the given name, such as headless-new or HEADLESS_NEW.
+   * @param name the name of the profile
+   * @return the profile, or HEADED if the name is unknown
+   */
+  public static ExecutionProfile fromName(@NotNull String name) {
+    try {
+      return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    } catch (IllegalArgumentException e) {
+      logger.warn("Unknown execution profile '{}', defaulting to '{}'", name, HEADED.getName());
+      return HEADED;
+    }
+  }
+
+  /**
+   * Gets the name of the profile used on the command line.
+   * @return the lower case name, such as headless-new
+   */
+  public String getName() {
+    return name().toLowerCase(Locale.ROOT).replace('_', '-');
+  }
+
+  private static Map<String, Object> preferences(Object... namesAndValues) {
+    Map<String, Object> preferences = new LinkedHashMap<>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      preferences.put((String) namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return preferences;
+  }
+}
@@ -0,0 +1,258 @@
+package driver;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.SessionId;
+
+/**
+ * Starts the browsers on Selenium Grid hubs instead of the local machine. The hubs are read from
+ * -Dgrid.hubs, a comma separated list of hub URLs, each one optionally followed by =[capacity]
+ * (-Dgrid.capacity, 4 by default), for instance
+ * -Dgrid.hubs=http://grid-a:4444/wd/hub=8,http://grid-b:4444/wd/hub=4. Each new session goes to
+ * the hub with the lowest share of its capacity in use. When all the hubs are full, the session
+ * requests wait in a first come, first served queue for up to -Dgrid.queueTimeout seconds (300),
+ * instead of failing on a full grid.
+ */
+public final class GridDispatcher {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(GridDispatcher.class);
+
+  private static final int DEFAULT_HUB_CAPACITY = 4;
+
+  private static final int DEFAULT_QUEUE_TIMEOUT = 300;
+
+  private static GridDispatcher instance;
+
+  private static boolean initialized;
+
+  private final List<Hub> hubs;
+
+  private final Duration queueTimeout;
+
+  /**
+   * Session requests waiting for a free hub, in arrival order.
+   */
+  private final Deque<Object> queue = new ArrayDeque<>();
+
+  private final Map<SessionId, Hub> sessionHubs = new ConcurrentHashMap<>();
+
+  private long queuedRequests;
+
+  private long queueWaitNanos;
+
+  /**
+   * Constructor of the GridDispatcher class.
+   * @param hubs the hubs the sessions are spread over
+   * @param queueTimeout maximum time a session request waits for a free hub
+   */
+  GridDispatcher(@NotNull List<Hub> hubs, @NotNull Duration queueTimeout) {
+    if (hubs.isEmpty()) {
+      throw new IllegalArgumentException("The grid needs at least one hub");
+    }
+    this.hubs = Collections.unmodifiableList(new ArrayList<>(hubs));
+    this.queueTimeout = queueTimeout;
+    logger.info("Selenium Grid hubs: {}, queue timeout: {}s", hubs, queueTimeout.getSeconds());
+  }
+
+  /**
+   * Gets the dispatcher of the hubs of -Dgrid.hubs.
+   * @return the dispatcher, or null when the browsers are started locally
+   * @throws IllegalArgumentException if a hub URL or capacity is invalid
+   */
+  @Nullable
+  public static synchronized GridDispatcher getInstance() {
+    if (!initialized) {
+      String hubList = System.getProperty("grid.hubs", "").trim();
+      instance = hubList.isEmpty() ? null : new GridDispatcher(
+          parseHubs(hubList, Integer.getInteger("grid.capacity", DEFAULT_HUB_CAPACITY)),
+          Duration.ofSeconds(Integer.getInteger("grid.queueTimeout", DEFAULT_QUEUE_TIMEOUT)));
+      initialized = true;
+    }
+    return instance;
+  }
+
+  /**
+   * Parses a comma separated list of hub URLs, each one optionally followed by =[capacity].
+   * @param hubList the list of hubs
+   * @param defaultCapacity the capacity of the hubs without one
+   * @return List of Hub
+   * @throws IllegalArgumentException if a hub URL or capacity is invalid
+   */
+  static List<Hub> parseHubs(@NotNull String hubList, int defaultCapacity) {
+    List<Hub> hubs = new ArrayList<>();
+    for (String hub : hubList.split(",")) {
+      String url = hub.trim();
+      if (url.isEmpty()) {
+        continue;
+      }
+      int capacity = defaultCapacity;
+      int separator = url.lastIndexOf('=');
+      if (separator > 0 && url.substring(separator + 1).matches("\\d+")) {
+        capacity = Integer.parseInt(url.substring(separator + 1));
+        url = url.substring(0, separator);
+      }
+      try {
+        hubs.add(new Hub(new URL(url), capacity));
+      } catch (MalformedURLException e) {
+        throw new IllegalArgumentException("Invalid Selenium Grid hub URL: " + url, e);
+      }
+    }
+    return hubs;
+  }
+
+  /**
+   * Starts a browser on the least loaded hub, waiting in the queue while all the hubs are full.
+   * @param sessionKey the browser type, execution profile and capabilities of the browser
+   * @return the remote browser
+   * @throws WebDriverException if no hub is free after the queue timeout, or the hub fails to
+   *     start the browser
+   */
+  RemoteWebDriver startSession(@NotNull SessionKey sessionKey) {
+    DesiredCapabilities capabilities = sessionKey.getBrowserType()
+        .getBrowserCapabilities(sessionKey.getCapabilities(), sessionKey.getExecutionProfile());
+    Hub hub = acquire();
+    try {
+      RemoteWebDriver webDriver = new RemoteWebDriver(hub.url, capabilities);
+      sessionHubs.put(webDriver.getSessionId(), hub);
+      logger.info("Started session {} on {}", webDriver.getSessionId(), hub);
+      return webDriver;
+    } catch (WebDriverException e) {
+      release(hub);
+      throw e;
+    }
+  }
+
+  /**
+   * Frees the hub slot of a remote browser that was quit. Does nothing for local browsers.
+   * @param sessionId the session id of the browser, read before quitting it
+   */
+  static void release(@Nullable SessionId sessionId) {
+    GridDispatcher dispatcher = getInstance();
+    if (null == dispatcher || null == sessionId) {
+      return;
+    }
+    Hub hub = dispatcher.sessionHubs.remove(sessionId);
+    if (null != hub) {
+      dispatcher.release(hub);
+    }
+  }
+
+  /**
+   * Logs how many session requests had to wait for a free hub, and for how long.
+   */
+  synchronized void logStatistics() {
+    logger.info("Selenium Grid: {} session requests queued, {} ms waiting in total",
+        queuedRequests, Duration.ofNanos(queueWaitNanos).toMillis());
+  }
+
+  /**
+   * Takes a slot of the least loaded hub, waiting in the queue while all the hubs are full.
+   * @return the hub
+   * @throws WebDriverException if no hub is free after the queue timeout
+   */
+  synchronized Hub acquire() {
+    Object ticket = new Object();
+    queue.addLast(ticket);
+    final long start = System.nanoTime();
+    final long deadline = start + queueTimeout.toNanos();
+    boolean queued = false;
+    try {
+      while (true) {
+        Hub hub = queue.peekFirst() == ticket ? getLeastLoadedHub() : null;
+        if (null != hub) {
+          hub.activeSessions++;
+          return hub;
+        }
+        if (!queued) {
+          queued = true;
+          queuedRequests++;
+          logger.debug("All the Selenium Grid hubs are full, {} session requests queued",
+              queue.size());
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          throw new WebDriverException("No Selenium Grid hub was free after "
+              + queueTimeout.getSeconds() + "s: " + hubs);
+        }
+        try {
+          wait(Math.max(1, Duration.ofNanos(remaining).toMillis()));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new WebDriverException("Interrupted while waiting for a Selenium Grid hub", e);
+        }
+      }
+    } finally {
+      queue.remove(ticket);
+      if (queued) {
+        queueWaitNanos += System.nanoTime() - start;
+      }
+      // the next request in the queue may be served now
+      notifyAll();
+    }
+  }
+
+  /**
+   * Frees a slot of the hub and serves the next session request of the queue.
+   * @param hub the hub returned by acquire()
+   */
+  synchronized void release(@NotNull Hub hub) {
+    hub.activeSessions--;
+    notifyAll();
+  }
+
+  private Hub getLeastLoadedHub() {
+    Hub leastLoaded = null;
+    for (Hub hub : hubs) {
+      if (hub.activeSessions < hub.capacity && (null == leastLoaded
+          || (double) hub.activeSessions / hub.capacity
+          < (double) leastLoaded.activeSessions / leastLoaded.capacity)) {
+        leastLoaded = hub;
+      }
+    }
+    return leastLoaded;
+  }
+
+  /**
+   * A Selenium Grid hub and the number of sessions it can run at the same time.
+   */
+  static final class Hub {
+
+    private final URL url;
+
+    private final int capacity;
+
+    private int activeSessions;
+
+    Hub(@NotNull URL url, int capacity) {
+      if (capacity < 1) {
+        throw new IllegalArgumentException("The capacity of the hub " + url
+            + " must be at least 1");
+      }
+      this.url = url;
+      this.capacity = capacity;
+    }
+
+    @Override
+    public String toString() {
+      return url + " (" + activeSessions + "/" + capacity + ")";
+    }
+  }
+}
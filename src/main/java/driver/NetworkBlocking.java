@@ -0,0 +1,208 @@
+package driver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import environment.EnvironmentConfig;
+import environment.EnvironmentSnapshot;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.SessionId;
+
+/**
+ * Keeps the browsers from downloading what the tests never look at: trackers, analytics and, with
+ * network.block-types, images, media and fonts. The URL patterns of network.deny (with * as
+ * wildcard) are blocked in Chrome with the DevTools command Network.setBlockedURLs, sent through
+ * the DevTools endpoint of chromedriver. Pages can deny more URLs, or allow some of the denied
+ * ones, while they are open. The browsers started with BrowserType.CHROME_CDP send the commands
+ * through their DevToolsConnection instead. Firefox has no DevTools endpoint: only the resource
+ * types are kept from loading, with the preferences of its profile. Images and web fonts are not
+ * downloaded, while media is neither preloaded nor autoplayed, so it is only downloaded when a
+ * test plays it.
+ */
+public final class NetworkBlocking {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(NetworkBlocking.class);
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private static final HttpClient httpClient = HttpClient.newBuilder()
+      .connectTimeout(Duration.ofSeconds(10)).build();
+
+  private static final Map<String, List<String>> TYPE_PATTERNS = new HashMap<>();
+
+  // the patterns match the whole URL: the trailing * keeps matching with a query string
+  static {
+    TYPE_PATTERNS.put("image", Arrays.asList("*.png*", "*.jpg*", "*.jpeg*", "*.gif*", "*.webp*",
+        "*.svg*", "*.ico*", "*.bmp*"));
+    TYPE_PATTERNS.put("media", Arrays.asList("*.mp4*", "*.webm*", "*.ogg*", "*.mp3*", "*.wav*",
+        "*.m4a*"));
+    TYPE_PATTERNS.put("font", Arrays.asList("*.woff*", "*.ttf*", "*.otf*", "*.eot*"));
+  }
+
+  /**
+   * Patterns blocked in each Chrome session, to skip the DevTools call when they do not change.
+   */
+  private static final Map<SessionId, List<String>> blockedPatterns = new ConcurrentHashMap<>();
+
+  /**
+   * Private constructor to hide the implicit one.
+   */
+  private NetworkBlocking() {
+
+  }
+
+  /**
+   * Blocks the URLs and resource types of the configuration in a new browser.
+   * @param webDriver the new browser
+   */
+  static void start(@NotNull RemoteWebDriver webDriver) {
+    setBlockedUrls(webDriver, getPatterns(Collections.emptyList(), Collections.emptyList()));
+  }
+
+  /**
+   * Blocks the URLs of the configuration plus the ones denied by a page, except the ones the page
+   * allows. Only Chrome browsers are affected, and failures are only logged: the page still
+   * loads, with all its resources.
+   * @param webDriver the browser showing the page
+   * @param denied URL patterns the page does not need
+   * @param allowed URL patterns the page needs, even if the configuration denies them
+   */
+  public static void apply(@NotNull RemoteWebDriver webDriver, @NotNull Collection<String> denied,
+                           @NotNull Collection<String> allowed) {
+    try {
+      setBlockedUrls(webDriver, getPatterns(denied, allowed));
+    } catch (WebDriverException e) {
+      logger.warn("Unable to block the network resources of the page", e);
+    }
+  }
+
+  /**
+   * Forgets a browser that was quit.
+   * @param webDriver the quit browser
+   */
+  static void stop(@NotNull RemoteWebDriver webDriver) {
+    if (null != webDriver.getSessionId()) {
+      blockedPatterns.remove(webDriver.getSessionId());
+    }
+  }
+
+  /**
+   * Checks if a resource type (image, media or font) is blocked by the configuration.
+   * @param type the resource type
+   * @return boolean
+   */
+  static boolean isTypeBlocked(@NotNull String type) {
+    return EnvironmentConfig.getSnapshot().getNetworkBlockTypes().contains(type);
+  }
+
+  private static List<String> getPatterns(Collection<String> denied, Collection<String> allowed) {
+    EnvironmentSnapshot environment = EnvironmentConfig.getSnapshot();
+    Set<String> patterns = new LinkedHashSet<>(environment.getNetworkDeny());
+    for (String type : environment.getNetworkBlockTypes()) {
+      List<String> typePatterns = TYPE_PATTERNS.get(type);
+      if (null == typePatterns) {
+        logger.warn("Unknown resource type to block: {}", type);
+      } else {
+        patterns.addAll(typePatterns);
+      }
+    }
+    patterns.addAll(denied);
+    patterns.removeAll(allowed);
+    return new ArrayList<>(patterns);
+  }
+
+  private static void setBlockedUrls(RemoteWebDriver webDriver, List<String> patterns) {
+    if (!(webDriver instanceof ChromeDriver)) {
+      return;
+    }
+    List<String> currentPatterns = blockedPatterns.get(webDriver.getSessionId());
+    if (null == currentPatterns ? patterns.isEmpty() : patterns.equals(currentPatterns)) {
+      return;
+    }
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put("urls", patterns);
+    DevToolsConnection connection = DevToolsConnection.of(webDriver);
+    if (null != connection) {
+      // both commands are sent before waiting for the first response
+      CompletableFuture<JsonNode> enabled = null == currentPatterns
+          ? connection.send("Network.enable", new HashMap<>()) : null;
+      CompletableFuture<JsonNode> blocked = connection.send("Network.setBlockedURLs", parameters);
+      if (null != enabled) {
+        DevToolsConnection.await(enabled);
+      }
+      DevToolsConnection.await(blocked);
+    } else {
+      if (null == currentPatterns) {
+        executeDevToolsCommand(webDriver, "Network.enable", new HashMap<>());
+      }
+      executeDevToolsCommand(webDriver, "Network.setBlockedURLs", parameters);
+    }
+    blockedPatterns.put(webDriver.getSessionId(), patterns);
+    logger.debug("Blocked URLs of session {}: {}", webDriver.getSessionId(), patterns);
+  }
+
+  /**
+   * Sends a DevTools command to the browser through the /goog/cdp/execute endpoint of chromedriver.
+   * @param webDriver a ChromeDriver
+   * @param command the DevTools method, like Network.enable
+   * @param parameters the parameters of the method
+   * @return the JSON response of chromedriver
+   * @throws WebDriverException if the command fails
+   */
+  static String executeDevToolsCommand(@NotNull RemoteWebDriver webDriver,
+                                       @NotNull String command,
+                                       @NotNull Map<String, Object> parameters) {
+    if (!(webDriver.getCommandExecutor() instanceof HttpCommandExecutor)) {
+      throw new WebDriverException("The browser has no DevTools endpoint");
+    }
+    String address = ((HttpCommandExecutor) webDriver.getCommandExecutor())
+        .getAddressOfRemoteServer().toString().replaceAll("/$", "");
+    Map<String, Object> body = new HashMap<>();
+    body.put("cmd", command);
+    body.put("params", parameters);
+    try {
+      HttpRequest request = HttpRequest.newBuilder()
+          .uri(URI.create(address + "/session/" + webDriver.getSessionId() + "/goog/cdp/execute"))
+          .header("Content-Type", "application/json; charset=utf-8")
+          .POST(HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(body)))
+          .build();
+      HttpResponse<String> response = httpClient.send(request,
+          HttpResponse.BodyHandlers.ofString());
+      if (response.statusCode() != 200) {
+        throw new WebDriverException("DevTools command " + command + " failed: "
+            + response.body());
+      }
+      return response.body();
+    } catch (IOException e) {
+      throw new WebDriverException("Unable to send the DevTools command " + command, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WebDriverException("Interrupted sending the DevTools command " + command, e);
+    }
+  }
+}
@@ -0,0 +1,224 @@
+package driver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Load, network and DOM activity of the page of a DevToolsConnection, updated by the events the
+ * browser pushes instead of being polled with scripts. The DOM mutations are reported by a
+ * MutationObserver injected in every document, which calls a Runtime binding at most once every
+ * 50 milliseconds.
+ */
+public final class PageEvents {
+
+  private static final String MUTATION_BINDING = "__pageEventsMutation";
+
+  private static final String MUTATION_OBSERVER_SCRIPT = ""
+      + "(function () {\n"
+      + "  if (window.__pageEventsObserver || !window." + MUTATION_BINDING + ") { return; }\n"
+      + "  var pending = false;\n"
+      + "  window.__pageEventsObserver = new MutationObserver(function () {\n"
+      + "    if (pending) { return; }\n"
+      + "    pending = true;\n"
+      + "    setTimeout(function () {\n"
+      + "      pending = false;\n"
+      + "      window." + MUTATION_BINDING + "('');\n"
+      + "    }, 50);\n"
+      + "  });\n"
+      + "  window.__pageEventsObserver.observe(document, {childList: true, subtree: true,\n"
+      + "      attributes: true, characterData: true});\n"
+      + "})();";
+
+  private final DevToolsConnection connection;
+
+  private final Set<String> pendingRequests = new HashSet<>();
+
+  /**
+   * The id of the main frame of the page, whose new documents cancel the pending requests.
+   */
+  private String mainFrameId;
+
+  /**
+   * Whether the main frame started loading a document that did not fire its load event yet.
+   */
+  private boolean loading;
+
+  private long loadCount;
+
+  private long lastNetworkActivityNanos = System.nanoTime();
+
+  private long lastMutationNanos = System.nanoTime();
+
+  PageEvents(@NotNull DevToolsConnection connection) {
+    this.connection = connection;
+  }
+
+  /**
+   * Subscribes to the events of the page. The commands are pipelined: they are all sent before
+   * waiting for the first response.
+   */
+  void start() {
+    connection.addListener("Page.loadEventFired", event -> onLoad());
+    connection.addListener("Page.frameStartedLoading",
+        event -> onFrameStartedLoading(event.path("frameId").asText()));
+    connection.addListener("Network.requestWillBeSent",
+        event -> onNetworkActivity(event.path("requestId").asText(), true));
+    connection.addListener("Network.loadingFinished",
+        event -> onNetworkActivity(event.path("requestId").asText(), false));
+    connection.addListener("Network.loadingFailed",
+        event -> onNetworkActivity(event.path("requestId").asText(), false));
+    connection.addListener("Runtime.bindingCalled", this::onBindingCalled);
+
+    Map<String, Object> binding = new HashMap<>();
+    binding.put("name", MUTATION_BINDING);
+    Map<String, Object> newDocumentScript = new HashMap<>();
+    newDocumentScript.put("source", MUTATION_OBSERVER_SCRIPT);
+    Map<String, Object> currentDocumentScript = new HashMap<>();
+    currentDocumentScript.put("expression", MUTATION_OBSERVER_SCRIPT);
+    List<CompletableFuture<JsonNode>> results = Arrays.asList(
+        connection.send("Page.enable", new HashMap<>()),
+        connection.send("Network.enable", new HashMap<>()),
+        connection.send("Runtime.enable", new HashMap<>()),
+        connection.send("Runtime.addBinding", binding),
+        connection.send("Page.addScriptToEvaluateOnNewDocument", newDocumentScript),
+        connection.send("Runtime.evaluate", currentDocumentScript),
+        connection.send("Page.getFrameTree", new HashMap<>()));
+    results.forEach(DevToolsConnection::await);
+    setMainFrameId(results.get(results.size() - 1).join().path("frameTree").path("frame")
+        .path("id").asText());
+  }
+
+  /**
+   * Gets the number of load events of the page so far, to wait for the next one with awaitLoad.
+   * @return long
+   */
+  public synchronized long getLoadCount() {
+    return loadCount;
+  }
+
+  /**
+   * Waits until the page fires a load event after the given one. Returns at once when the main
+   * frame is not loading a document, like after a step that did not navigate.
+   * @param previousLoadCount the load count before the navigation
+   * @param timeout maximum time to wait
+   * @return true if the page loaded or is not loading, false on timeout
+   */
+  public synchronized boolean awaitLoad(long previousLoadCount, @NotNull Duration timeout) {
+    final long deadline = System.nanoTime() + timeout.toNanos();
+    while (loading && loadCount <= previousLoadCount) {
+      if (isPast(deadline) || Thread.currentThread().isInterrupted()) {
+        return false;
+      }
+      waitUntil(deadline);
+    }
+    return true;
+  }
+
+  /**
+   * Waits until the page has no pending request for the quiet period.
+   * @param quietPeriod how long the network must stay idle
+   * @param timeout maximum time to wait
+   * @return true if the network is idle, false on timeout
+   */
+  public synchronized boolean awaitNetworkIdle(@NotNull Duration quietPeriod,
+                                               @NotNull Duration timeout) {
+    final long deadline = System.nanoTime() + timeout.toNanos();
+    while (true) {
+      long idleAt = lastNetworkActivityNanos + quietPeriod.toNanos();
+      if (pendingRequests.isEmpty() && isPast(idleAt)) {
+        return true;
+      }
+      if (isPast(deadline) || Thread.currentThread().isInterrupted()) {
+        return false;
+      }
+      waitUntil(pendingRequests.isEmpty() && idleAt - deadline < 0 ? idleAt : deadline);
+    }
+  }
+
+  /**
+   * Waits until the DOM of the page does not change for the quiet period.
+   * @param quietPeriod how long the DOM must stay unchanged
+   * @param timeout maximum time to wait
+   * @return true if the DOM is stable, false on timeout
+   */
+  public synchronized boolean awaitDomStable(@NotNull Duration quietPeriod,
+                                             @NotNull Duration timeout) {
+    final long deadline = System.nanoTime() + timeout.toNanos();
+    while (true) {
+      long stableAt = lastMutationNanos + quietPeriod.toNanos();
+      if (isPast(stableAt)) {
+        return true;
+      }
+      if (isPast(deadline) || Thread.currentThread().isInterrupted()) {
+        return false;
+      }
+      waitUntil(stableAt - deadline < 0 ? stableAt : deadline);
+    }
+  }
+
+  private synchronized void setMainFrameId(String frameId) {
+    mainFrameId = frameId;
+  }
+
+  private synchronized void onLoad() {
+    loading = false;
+    loadCount++;
+    notifyAll();
+  }
+
+  private synchronized void onFrameStartedLoading(String frameId) {
+    // the iframes load next to the document, only a new main document cancels its requests
+    if (!frameId.equals(mainFrameId)) {
+      return;
+    }
+    loading = true;
+    pendingRequests.clear();
+    lastNetworkActivityNanos = System.nanoTime();
+    notifyAll();
+  }
+
+  private synchronized void onNetworkActivity(String requestId, boolean started) {
+    if (started) {
+      pendingRequests.add(requestId);
+    } else {
+      pendingRequests.remove(requestId);
+    }
+    lastNetworkActivityNanos = System.nanoTime();
+    notifyAll();
+  }
+
+  private synchronized void onBindingCalled(JsonNode event) {
+    if (MUTATION_BINDING.equals(event.path("name").asText())) {
+      lastMutationNanos = System.nanoTime();
+      notifyAll();
+    }
+  }
+
+  private static boolean isPast(long nanoTime) {
+    return System.nanoTime() - nanoTime >= 0;
+  }
+
+  /**
+   * Waits for the next event or until the given time.
+   */
+  private void waitUntil(long nanoTime) {
+    long remaining = nanoTime - System.nanoTime();
+    if (remaining <= 0) {
+      return;
+    }
+    try {
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
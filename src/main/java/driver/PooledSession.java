@@ -0,0 +1,95 @@
+package driver;
+
+import java.util.Set;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.SessionId;
+
+/**
+ * A started browser owned by the SessionPool, together with the number of tests it has served.
+ */
+public final class PooledSession {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(PooledSession.class);
+
+  private static final String BLANK_PAGE = "about:blank";
+
+  private final SessionKey key;
+
+  private final RemoteWebDriver webDriver;
+
+  private int uses;
+
+  PooledSession(SessionKey key, RemoteWebDriver webDriver) {
+    this.key = key;
+    this.webDriver = webDriver;
+  }
+
+  public SessionKey getKey() {
+    return key;
+  }
+
+  public RemoteWebDriver getDriver() {
+    return webDriver;
+  }
+
+  /**
+   * Gets the number of tests that already used this browser.
+   * @return int
+   */
+  public int getUses() {
+    return uses;
+  }
+
+  void markUsed() {
+    uses++;
+  }
+
+  /**
+   * Leaves the browser as a new test expects to find it: a single window showing about:blank, with
+   * no cookies and no local or session storage. Cookies and storage can only be cleared for the
+   * origin currently open, which is the one the previous test finished on.
+   * @return true if the browser was reset, false if it has to be recycled
+   */
+  boolean reset() {
+    try {
+      Set<String> windowHandles = webDriver.getWindowHandles();
+      String mainWindow = windowHandles.iterator().next();
+      for (String windowHandle : windowHandles) {
+        if (!windowHandle.equals(mainWindow)) {
+          webDriver.switchTo().window(windowHandle).close();
+        }
+      }
+      webDriver.switchTo().window(mainWindow);
+      SessionSnapshot.clear(webDriver);
+      webDriver.get(BLANK_PAGE);
+      return true;
+    } catch (WebDriverException | java.util.NoSuchElementException e) {
+      logger.warn("Unable to reset the browser session {}", webDriver.getSessionId(), e);
+      return false;
+    }
+  }
+
+  /**
+   * Quits the browser, ignoring the errors of a session that is already dead.
+   */
+  void quit() {
+    NetworkBlocking.stop(webDriver);
+    DevToolsConnection.closeFor(webDriver);
+    // quit() forgets the session id
+    SessionId sessionId = webDriver.getSessionId();
+    try {
+      webDriver.quit();
+    } catch (WebDriverException e) {
+      logger.warn("Unable to quit the browser session {}", webDriver.getSessionId(), e);
+    } finally {
+      GridDispatcher.release(sessionId);
+      ResourceGovernor.getInstance().browserQuit();
+    }
+  }
+}
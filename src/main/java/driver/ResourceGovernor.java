@@ -0,0 +1,305 @@
+package driver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Admits the start of each local browser according to what the machine can sustain, so -Dthreads
+ * can be set to an upper bound instead of a number tuned by hand. A browser is started when the
+ * available memory can hold one more browser, plus the ones still starting and a reserve
+ * (-Dgovernor.reserveMb, 1024), and the CPU load is under -Dgovernor.maxCpu (0.85). Otherwise the
+ * start waits, checking again with a growing delay, for up to -Dgovernor.maxWaitSeconds (120).
+ * The memory of a browser is the proportional set size (Pss) of a chromedriver or geckodriver
+ * process started by this JVM plus its descendants, the browser processes, read from /proc: the
+ * memory the browser processes share is only counted once. The first browser is always admitted,
+ * and -Dgovernor=false disables the governor. Each decision is logged with the measures it was
+ * based on.
+ */
+public final class ResourceGovernor {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(ResourceGovernor.class);
+
+  private static final long MEGABYTE = 1024L * 1024L;
+
+  /**
+   * Memory assumed for a browser until one is running and can be measured.
+   */
+  private static final long DEFAULT_BROWSER_BYTES = 600 * MEGABYTE;
+
+  private static final long MIN_DELAY_MILLIS = 200;
+
+  private static final long MAX_DELAY_MILLIS = 2_000;
+
+  private static final Path PROC = Paths.get("/proc");
+
+  /**
+   * The executables of the driver processes whose descendants are the browsers. The other child
+   * processes of this JVM, such as keytool or ffmpeg, are not browsers.
+   */
+  private static final List<String> DRIVER_EXECUTABLES = List.of("chromedriver", "geckodriver");
+
+  private static ResourceGovernor instance;
+
+  private final boolean enabled;
+
+  private final long reserveBytes;
+
+  private final double maxCpuLoad;
+
+  private final long maxWaitMillis;
+
+  private final com.sun.management.OperatingSystemMXBean operatingSystem =
+      (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+  /**
+   * Browsers admitted that did not finish starting yet, whose memory cannot be measured.
+   */
+  private int startingBrowsers;
+
+  private long admittedCount;
+
+  private long throttledCount;
+
+  private long throttleWaitMillis;
+
+  private ResourceGovernor() {
+    enabled = Boolean.parseBoolean(System.getProperty("governor", "true"));
+    reserveBytes = Integer.getInteger("governor.reserveMb", 1024) * MEGABYTE;
+    maxCpuLoad = Double.parseDouble(System.getProperty("governor.maxCpu", "0.85"));
+    maxWaitMillis = Integer.getInteger("governor.maxWaitSeconds", 120) * 1000L;
+  }
+
+  /**
+   * Gets the governor of the suite.
+   * @return ResourceGovernor
+   */
+  public static synchronized ResourceGovernor getInstance() {
+    if (null == instance) {
+      instance = new ResourceGovernor();
+    }
+    return instance;
+  }
+
+  /**
+   * Waits until the machine can hold one more browser. Each call must be followed by a call to
+   * finishStart() once the browser started, or failed to start.
+   * @param sessionKey the browser to be started, for the logs
+   */
+  synchronized void admit(SessionKey sessionKey) {
+    if (!enabled) {
+      startingBrowsers++;
+      return;
+    }
+    final long start = System.currentTimeMillis();
+    long delay = MIN_DELAY_MILLIS;
+    boolean throttled = false;
+    while (true) {
+      Measures measures = measure();
+      String reason = getThrottleReason(measures);
+      long waited = System.currentTimeMillis() - start;
+      if (null == reason || waited >= maxWaitMillis) {
+        if (null != reason) {
+          logger.warn("Admitted {} after waiting {} ms although {}: {}", sessionKey, waited,
+              reason, measures);
+        } else {
+          logger.info("Admitted {} after {} ms: {}", sessionKey, waited, measures);
+        }
+        if (throttled) {
+          throttleWaitMillis += waited;
+        }
+        admittedCount++;
+        startingBrowsers++;
+        return;
+      }
+      if (!throttled) {
+        throttled = true;
+        throttledCount++;
+      }
+      logger.info("Throttled {} for {} ms, {}: {}", sessionKey, delay, reason, measures);
+      try {
+        wait(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting to start a browser", e);
+      }
+      delay = Math.min(delay * 2, MAX_DELAY_MILLIS);
+    }
+  }
+
+  /**
+   * Records that an admitted browser started or failed to start, so its memory is measured
+   * instead of estimated.
+   */
+  synchronized void finishStart() {
+    startingBrowsers--;
+    notifyAll();
+  }
+
+  /**
+   * Wakes up the starts waiting for resources, after a browser was quit.
+   */
+  synchronized void browserQuit() {
+    notifyAll();
+  }
+
+  /**
+   * Logs how many browser starts were throttled, and for how long.
+   */
+  synchronized void logStatistics() {
+    if (enabled) {
+      logger.info("Resource governor: {} browsers admitted, {} throttled, {} ms waiting in total",
+          admittedCount, throttledCount, throttleWaitMillis);
+    }
+  }
+
+  private String getThrottleReason(Measures measures) {
+    if (measures.browserBytes.isEmpty() && startingBrowsers == 0) {
+      return null;
+    }
+    long neededBytes = measures.getBytesPerBrowser() * (startingBrowsers + 1) + reserveBytes;
+    if (measures.availableBytes >= 0 && measures.availableBytes < neededBytes) {
+      return "only " + measures.availableBytes / MEGABYTE + " MB available of the "
+          + neededBytes / MEGABYTE + " MB needed";
+    }
+    if (measures.cpuLoad > maxCpuLoad) {
+      return String.format("the CPU load is %.2f", measures.cpuLoad);
+    }
+    return null;
+  }
+
+  private Measures measure() {
+    List<Long> browserBytes = ProcessHandle.current().children()
+        .filter(ResourceGovernor::isDriver)
+        .map(driver -> getMemoryBytes(driver) + driver.descendants()
+            .mapToLong(ResourceGovernor::getMemoryBytes).sum())
+        .filter(bytes -> bytes > 0)
+        .collect(Collectors.toList());
+    return new Measures(Math.max(0, getCpuLoad()), getAvailableBytes(), browserBytes,
+        startingBrowsers);
+  }
+
+  /**
+   * Gets the CPU load of the machine. getSystemCpuLoad() is deprecated since Java 14 for
+   * getCpuLoad(), which does not exist in Java 11, the version this project targets.
+   */
+  @SuppressWarnings("deprecation")
+  private double getCpuLoad() {
+    return operatingSystem.getSystemCpuLoad();
+  }
+
+  /**
+   * Gets the free memory of the machine. getFreePhysicalMemorySize() is deprecated since Java 14
+   * for getFreeMemorySize(), which does not exist in Java 11, the version this project targets.
+   * @return the free memory in bytes
+   */
+  @SuppressWarnings("deprecation")
+  long getFreeMemoryBytes() {
+    return operatingSystem.getFreePhysicalMemorySize();
+  }
+
+  private static boolean isDriver(ProcessHandle process) {
+    String executable = process.info().command().map(command -> Paths.get(command).getFileName())
+        .map(Path::toString).orElse("");
+    return DRIVER_EXECUTABLES.stream().anyMatch(executable::startsWith);
+  }
+
+  /**
+   * Gets the memory available to new processes: MemAvailable of /proc/meminfo, which counts the
+   * page cache that can be freed, or the free memory on other systems.
+   * @return the available memory in bytes
+   */
+  long getAvailableBytes() {
+    Path memInfo = PROC.resolve("meminfo");
+    if (Files.isReadable(memInfo)) {
+      try (Stream<String> lines = Files.lines(memInfo, StandardCharsets.US_ASCII)) {
+        return lines.filter(line -> line.startsWith("MemAvailable:"))
+            .mapToLong(ResourceGovernor::parseKilobytes).findFirst()
+            .orElseGet(this::getFreeMemoryBytes);
+      } catch (IOException e) {
+        logger.debug("Unable to read {}", memInfo, e);
+      }
+    }
+    return operatingSystem.getFreePhysicalMemorySize();
+  }
+
+  /**
+   * Gets the memory of a process: its proportional set size from /proc/[pid]/smaps_rollup, where
+   * the pages shared with other processes count for their share only, or its resident memory
+   * from /proc/[pid]/status on kernels without smaps_rollup.
+   * @return the memory in bytes, 0 if unknown
+   */
+  private static long getMemoryBytes(ProcessHandle process) {
+    Path processDirectory = PROC.resolve(Long.toString(process.pid()));
+    Path smapsRollup = processDirectory.resolve("smaps_rollup");
+    if (Files.isReadable(smapsRollup)) {
+      return readKilobytes(smapsRollup, "Pss:");
+    }
+    return readKilobytes(processDirectory.resolve("status"), "VmRSS:");
+  }
+
+  /**
+   * Reads a field in kilobytes of a /proc file.
+   * @return the value in bytes, 0 if unknown
+   */
+  private static long readKilobytes(Path file, String field) {
+    try (Stream<String> lines = Files.lines(file, StandardCharsets.US_ASCII)) {
+      return lines.filter(line -> line.startsWith(field))
+          .mapToLong(ResourceGovernor::parseKilobytes).findFirst().orElse(0);
+    } catch (IOException | UncheckedIOException | SecurityException e) {
+      // the process exited, or the system has no /proc
+      return 0;
+    }
+  }
+
+  private static long parseKilobytes(String line) {
+    String[] fields = line.trim().split("\\s+");
+    return Long.parseLong(fields[1]) * 1024;
+  }
+
+  /**
+   * Resources of the machine at the time of an admission decision.
+   */
+  private static final class Measures {
+
+    private final double cpuLoad;
+
+    private final long availableBytes;
+
+    private final List<Long> browserBytes;
+
+    private final int startingBrowsers;
+
+    private Measures(double cpuLoad, long availableBytes, List<Long> browserBytes,
+                     int startingBrowsers) {
+      this.cpuLoad = cpuLoad;
+      this.availableBytes = availableBytes;
+      this.browserBytes = browserBytes;
+      this.startingBrowsers = startingBrowsers;
+    }
+
+    long getBytesPerBrowser() {
+      return browserBytes.isEmpty() ? DEFAULT_BROWSER_BYTES
+          : browserBytes.stream().mapToLong(Long::longValue).sum() / browserBytes.size();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("cpu=%.2f, available=%d MB, browsers=%d x %d MB, starting=%d",
+          cpuLoad, availableBytes / MEGABYTE, browserBytes.size(),
+          getBytesPerBrowser() / MEGABYTE, startingBrowsers);
+    }
+  }
+}
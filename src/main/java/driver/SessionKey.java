@@ -0,0 +1,74 @@
+package driver;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+/**
+ * Identifies which kind of browser session a test needs. Two sessions with the same key are
+ * interchangeable, so a pooled browser started for one test can be handed to another one.
+ */
+public final class SessionKey {
+
+  private final BrowserType browserType;
+
+  private final ExecutionProfile executionProfile;
+
+  private final Map<String, Object> capabilities;
+
+  /**
+   * Constructor of the SessionKey class.
+   * @param browserType the browser to be started
+   * @param executionProfile how the browser is run, headed or headless
+   * @param capabilities the desired capabilities requested for the browser
+   */
+  public SessionKey(@NotNull BrowserType browserType, @NotNull ExecutionProfile executionProfile,
+                    @NotNull DesiredCapabilities capabilities) {
+    this.browserType = browserType;
+    this.executionProfile = executionProfile;
+    this.capabilities = Collections.unmodifiableMap(new HashMap<>(capabilities.asMap()));
+  }
+
+  public BrowserType getBrowserType() {
+    return browserType;
+  }
+
+  public ExecutionProfile getExecutionProfile() {
+    return executionProfile;
+  }
+
+  /**
+   * Gets a new copy of the desired capabilities. BrowserType merges its own options into the
+   * capabilities it receives, so every session start needs its own copy.
+   * @return DesiredCapabilities
+   */
+  public DesiredCapabilities getCapabilities() {
+    return new DesiredCapabilities(capabilities);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof SessionKey)) {
+      return false;
+    }
+    SessionKey that = (SessionKey) other;
+    return browserType == that.browserType && executionProfile == that.executionProfile
+        && capabilities.equals(that.capabilities);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(browserType, executionProfile, capabilities);
+  }
+
+  @Override
+  public String toString() {
+    return browserType + " " + executionProfile.getName() + " " + capabilities;
+  }
+}
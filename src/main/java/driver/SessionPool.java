@@ -0,0 +1,287 @@
+package driver;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+/**
+ * Bounded pool of started browsers. Tests borrow a browser for the key they need and give it back
+ * when they finish, so the browser start up is paid once per session instead of once per test.
+ * A returned browser is reset and kept idle, and it is only quit when the reset fails, when it
+ * reached the maximum number of uses or when the pool needs room for another kind of browser.
+ */
+public class SessionPool {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(SessionPool.class);
+
+  private static final int DEFAULT_MAX_SESSION_USES = 25;
+
+  /**
+   * Idle browsers, grouped by the key they were started with.
+   */
+  private final Map<SessionKey, Deque<PooledSession>> idleSessions = new HashMap<>();
+
+  private final Function<SessionKey, RemoteWebDriver> sessionStarter;
+
+  private final int maxSessions;
+
+  private final int maxSessionUses;
+
+  /**
+   * Browsers being started in the background by prewarm(), grouped by key.
+   */
+  private final Map<SessionKey, Integer> warmingSessions = new HashMap<>();
+
+  /**
+   * Callers of acquire() waiting for one of the warmingSessions, grouped by key. Each warming
+   * browser is claimed by one caller, the others start their own browser if the pool has room.
+   */
+  private final Map<SessionKey, Integer> claimedWarmSessions = new HashMap<>();
+
+  /**
+   * Number of browsers alive, both idle and borrowed, including the ones being started.
+   */
+  private int liveSessions;
+
+  /**
+   * Total time the callers of acquire() spent waiting for a browser that was still warming up.
+   */
+  private long warmWaitNanos;
+
+  /**
+   * Constructor of the SessionPool class. Reads the size of the pool from the maxSessions
+   * argument of the command line (defaults to the threads argument) and the number of tests a
+   * browser serves before being recycled from the maxSessionUses argument.
+   * @param sessionStarter starts a new browser for the given key
+   */
+  public SessionPool(@NotNull Function<SessionKey, RemoteWebDriver> sessionStarter) {
+    this(sessionStarter,
+        Integer.getInteger("maxSessions", Math.max(1, Integer.getInteger("threads", 1))),
+        Integer.getInteger("maxSessionUses", DEFAULT_MAX_SESSION_USES));
+  }
+
+  /**
+   * Constructor of the SessionPool class.
+   * @param sessionStarter starts a new browser for the given key
+   * @param maxSessions maximum number of browsers alive at the same time
+   * @param maxSessionUses number of tests a browser serves before being quit
+   */
+  public SessionPool(@NotNull Function<SessionKey, RemoteWebDriver> sessionStarter,
+                     int maxSessions, int maxSessionUses) {
+    if (maxSessions < 1 || maxSessionUses < 1) {
+      throw new IllegalArgumentException("The session pool needs at least one session and use");
+    }
+    this.sessionStarter = sessionStarter;
+    this.maxSessions = maxSessions;
+    this.maxSessionUses = maxSessionUses;
+    logger.info("Session pool size: {}, uses per session: {}", maxSessions, maxSessionUses);
+  }
+
+  /**
+   * Borrows a browser for the given key. Idle browsers are reused, then a browser of the key that
+   * is warming up and not claimed by another caller is awaited, otherwise a new browser is
+   * started if the pool is not full. When the pool is full an idle browser of another key is quit
+   * to make room, or the caller waits until a browser is returned.
+   * @param key the kind of browser needed
+   * @return a started browser that belongs to the caller until it is released
+   */
+  public PooledSession acquire(@NotNull SessionKey key) {
+    PooledSession evicted = null;
+    synchronized (this) {
+      while (true) {
+        PooledSession idleSession = pollIdle(key);
+        if (null != idleSession) {
+          logger.debug("Reusing browser session {} ({} uses)",
+              idleSession.getDriver().getSessionId(), idleSession.getUses());
+          return idleSession;
+        }
+        if (warmingSessions.getOrDefault(key, 0) > claimedWarmSessions.getOrDefault(key, 0)) {
+          waitForWarmSession(key);
+          continue;
+        }
+        if (liveSessions < maxSessions) {
+          break;
+        }
+        evicted = pollAnyIdle();
+        if (null != evicted) {
+          logger.debug("Pool is full, recycling idle session of {}", evicted.getKey());
+          liveSessions--;
+          break;
+        }
+        logger.debug("Pool is full, waiting for a browser session to be released");
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while waiting for a browser session", e);
+        }
+      }
+      liveSessions++;
+    }
+    if (null != evicted) {
+      evicted.quit();
+    }
+    return startSession(key);
+  }
+
+  /**
+   * Starts a browser in the background and leaves it idle in the pool, so the first test that
+   * needs it does not pay the start up. Nothing is started if the pool is full.
+   * @param key the kind of browser to start
+   * @param executor the executor that starts the browser
+   * @return the time it took to start the browser, or zero if the pool was full
+   */
+  public CompletableFuture<Duration> prewarm(@NotNull SessionKey key, @NotNull Executor executor) {
+    synchronized (this) {
+      if (liveSessions >= maxSessions) {
+        logger.debug("Pool is full, not warming up another {} session", key);
+        return CompletableFuture.completedFuture(Duration.ZERO);
+      }
+      liveSessions++;
+      warmingSessions.merge(key, 1, Integer::sum);
+    }
+    return CompletableFuture.supplyAsync(() -> {
+      final Instant start = Instant.now();
+      try {
+        PooledSession session = new PooledSession(key, sessionStarter.apply(key));
+        synchronized (this) {
+          idleSessions.computeIfAbsent(key, k -> new ArrayDeque<>()).push(session);
+        }
+        return Duration.between(start, Instant.now());
+      } catch (RuntimeException e) {
+        logger.error("Unable to warm up a {} session", key, e);
+        synchronized (this) {
+          liveSessions--;
+        }
+        throw e;
+      } finally {
+        synchronized (this) {
+          warmingSessions.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+          notifyAll();
+        }
+      }
+    }, executor);
+  }
+
+  /**
+   * Gets the total time the tests spent waiting for a browser that was still warming up. Zero
+   * means the warm up was completely hidden behind the suite set up.
+   * @return Duration
+   */
+  public synchronized Duration getWarmWaitTime() {
+    return Duration.ofNanos(warmWaitNanos);
+  }
+
+  /**
+   * Gives a browser back to the pool. The browser is reset for the next test, or quit if the
+   * reset fails or the browser reached the maximum number of uses.
+   * @param session the browser borrowed with acquire()
+   */
+  public void release(@NotNull PooledSession session) {
+    session.markUsed();
+    if (session.getUses() >= maxSessionUses) {
+      logger.debug("Browser session {} reached {} uses, recycling it",
+          session.getDriver().getSessionId(), session.getUses());
+      discard(session);
+      return;
+    }
+    if (!session.reset()) {
+      discard(session);
+      return;
+    }
+    synchronized (this) {
+      idleSessions.computeIfAbsent(session.getKey(), k -> new ArrayDeque<>()).push(session);
+      notifyAll();
+    }
+  }
+
+  /**
+   * Quits a borrowed browser instead of giving it back to the pool.
+   * @param session the browser borrowed with acquire()
+   */
+  public void discard(@NotNull PooledSession session) {
+    session.quit();
+    synchronized (this) {
+      liveSessions--;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Quits all the idle browsers. Borrowed browsers must be discarded by their owners.
+   */
+  public void shutdown() {
+    Deque<PooledSession> sessionsToQuit = new ArrayDeque<>();
+    synchronized (this) {
+      for (Deque<PooledSession> sessions : idleSessions.values()) {
+        sessionsToQuit.addAll(sessions);
+      }
+      idleSessions.clear();
+      liveSessions -= sessionsToQuit.size();
+      notifyAll();
+    }
+    logger.trace("Quitting {} idle browser sessions", sessionsToQuit.size());
+    sessionsToQuit.forEach(PooledSession::quit);
+  }
+
+  private void waitForWarmSession(SessionKey key) {
+    logger.debug("Waiting for a browser session that is warming up");
+    final long start = System.nanoTime();
+    claimedWarmSessions.merge(key, 1, Integer::sum);
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a browser session", e);
+    } finally {
+      claimedWarmSessions.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+      warmWaitNanos += System.nanoTime() - start;
+    }
+  }
+
+  private PooledSession startSession(SessionKey key) {
+    try {
+      return new PooledSession(key, sessionStarter.apply(key));
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        liveSessions--;
+        notifyAll();
+      }
+      throw e;
+    }
+  }
+
+  private PooledSession pollIdle(SessionKey key) {
+    Deque<PooledSession> sessions = idleSessions.get(key);
+    return null == sessions ? null : sessions.poll();
+  }
+
+  private PooledSession pollAnyIdle() {
+    Iterator<Deque<PooledSession>> iterator = idleSessions.values().iterator();
+    while (iterator.hasNext()) {
+      Deque<PooledSession> sessions = iterator.next();
+      PooledSession session = sessions.pollLast();
+      if (sessions.isEmpty()) {
+        iterator.remove();
+      }
+      if (null != session) {
+        return session;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,137 @@
+package driver;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Starts browsers in the background at the beginning of the suite, while the configuration is
+ * loaded and TestNG discovers the tests, so the first test of each thread finds a browser ready
+ * in the session pool.
+ */
+public final class SessionPreWarmer {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(SessionPreWarmer.class);
+
+  private static final String THREAD_ID = "threadId";
+
+  private static final int TIMEOUT_TO_FINISH_WARM_UP = 60;
+
+  private final SessionPool sessionPool;
+
+  private final List<Duration> startupTimes = Collections.synchronizedList(new ArrayList<>());
+
+  private final List<CompletableFuture<Duration>> warmUps = new ArrayList<>();
+
+  private ExecutorService executor;
+
+  private Instant warmUpStart;
+
+  private volatile Instant warmUpFinish;
+
+  /**
+   * Constructor of the SessionPreWarmer class.
+   * @param sessionPool the pool the warm browsers are left in
+   */
+  public SessionPreWarmer(@NotNull SessionPool sessionPool) {
+    this.sessionPool = sessionPool;
+  }
+
+  /**
+   * Starts the given number of browsers in the background. Returns immediately.
+   * @param key the kind of browser to start
+   * @param count the number of browsers to start, usually the number of test threads
+   */
+  public void warm(@NotNull SessionKey key, int count) {
+    if (count < 1) {
+      logger.debug("Browser pre-warming is disabled");
+      return;
+    }
+    logger.info("Pre-warming {} browser sessions of {}", count, key.getBrowserType());
+    AtomicInteger threadNumber = new AtomicInteger();
+    executor = Executors.newFixedThreadPool(count, runnable -> {
+      Thread thread = new Thread(() -> {
+        ThreadContext.put(THREAD_ID, Thread.currentThread().getName());
+        runnable.run();
+      }, "session-prewarmer-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    warmUpStart = Instant.now();
+    for (int i = 0; i < count; i++) {
+      warmUps.add(sessionPool.prewarm(key, executor).whenComplete((startupTime, error) -> {
+        if (null == error) {
+          startupTimes.add(startupTime);
+        }
+      }));
+    }
+    CompletableFuture.allOf(warmUps.toArray(new CompletableFuture<?>[0]))
+        .whenComplete((ignored, error) -> warmUpFinish = Instant.now());
+    executor.shutdown();
+  }
+
+  /**
+   * Gets the time each pre-warmed browser took to start.
+   * @return the list of start up times
+   */
+  public List<Duration> getStartupTimes() {
+    synchronized (startupTimes) {
+      return new ArrayList<>(startupTimes);
+    }
+  }
+
+  /**
+   * Gets the time from the beginning of the warm up until the last browser was started.
+   * @return the wall clock time of the warm up, or zero if it did not finish
+   */
+  public Duration getWarmUpTime() {
+    if (null == warmUpStart || null == warmUpFinish) {
+      return Duration.ZERO;
+    }
+    return Duration.between(warmUpStart, warmUpFinish);
+  }
+
+  /**
+   * Waits for the browsers that are still starting, so they end up in the pool and are quit with
+   * it, and logs how long the browsers took to start and how long the tests waited for them.
+   */
+  public void finish() {
+    if (null == executor) {
+      return;
+    }
+    try {
+      if (!executor.awaitTermination(TIMEOUT_TO_FINISH_WARM_UP, TimeUnit.SECONDS)) {
+        logger.warn("Some browsers did not finish warming up in {} seconds",
+            TIMEOUT_TO_FINISH_WARM_UP);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    long totalStartup = 0;
+    long maxStartup = 0;
+    List<Duration> times = getStartupTimes();
+    for (Duration startupTime : times) {
+      totalStartup += startupTime.toMillis();
+      maxStartup = Math.max(maxStartup, startupTime.toMillis());
+    }
+    logger.info("Pre-warmed {} browsers in {} ms (sum of start ups {} ms, slowest {} ms)",
+        times.size(), getWarmUpTime().toMillis(), totalStartup, maxStartup);
+    logger.info("Tests waited {} ms in total for browsers that were warming up",
+        sessionPool.getWarmWaitTime().toMillis());
+  }
+}
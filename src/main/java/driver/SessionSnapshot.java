@@ -0,0 +1,142 @@
+package driver;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+/**
+ * The authentication state of a browser: its cookies and the local and session storage of the
+ * origin it is showing. A snapshot taken after a login can be restored into a clean browser to
+ * start a test already logged in, without going through the login page.
+ */
+public final class SessionSnapshot {
+
+  private static final String READ_STORAGE_SCRIPT = ""
+      + "function read(storage) {\n"
+      + "  var values = {};\n"
+      + "  for (var i = 0; i < storage.length; i++) {\n"
+      + "    values[storage.key(i)] = storage.getItem(storage.key(i));\n"
+      + "  }\n"
+      + "  return values;\n"
+      + "}\n"
+      + "return [read(window.localStorage), read(window.sessionStorage)];";
+
+  private static final String WRITE_STORAGE_SCRIPT = ""
+      + "function write(storage, values) {\n"
+      + "  Object.keys(values).forEach(function (key) { storage.setItem(key, values[key]); });\n"
+      + "}\n"
+      + "write(window.localStorage, arguments[0]);\n"
+      + "write(window.sessionStorage, arguments[1]);";
+
+  private static final String CLEAR_STORAGE_SCRIPT = "try { window.localStorage.clear(); } "
+      + "catch (e) {} try { window.sessionStorage.clear(); } catch (e) {}";
+
+  /**
+   * Page of the origin opened to write the cookies and storage before going to the snapshot URL:
+   * a small static resource, so the application does not start with the state half restored.
+   */
+  private static final String ORIGIN_PAGE = "/favicon.ico";
+
+  private final URL url;
+
+  private final Set<Cookie> cookies;
+
+  private final Map<String, String> localStorage;
+
+  private final Map<String, String> sessionStorage;
+
+  private final Instant capturedAt;
+
+  private SessionSnapshot(URL url, Set<Cookie> cookies, Map<String, String> localStorage,
+                          Map<String, String> sessionStorage, Instant capturedAt) {
+    this.url = url;
+    this.cookies = Collections.unmodifiableSet(new HashSet<>(cookies));
+    this.localStorage = Collections.unmodifiableMap(new HashMap<>(localStorage));
+    this.sessionStorage = Collections.unmodifiableMap(new HashMap<>(sessionStorage));
+    this.capturedAt = capturedAt;
+  }
+
+  /**
+   * Takes a snapshot of the cookies and storage of the page the browser is showing.
+   * @param driver the browser
+   * @return SessionSnapshot
+   * @throws MalformedURLException if the browser is not showing a web page
+   */
+  @SuppressWarnings("unchecked")
+  public static SessionSnapshot capture(@NotNull RemoteWebDriver driver)
+      throws MalformedURLException {
+    URL url = new URL(driver.getCurrentUrl());
+    Set<Cookie> cookies = driver.manage().getCookies();
+    List<Map<String, Object>> storage =
+        (List<Map<String, Object>>) driver.executeScript(READ_STORAGE_SCRIPT);
+    return new SessionSnapshot(url, cookies, toStrings(storage.get(0)),
+        toStrings(storage.get(1)), Instant.now());
+  }
+
+  /**
+   * Writes the cookies and storage of the snapshot into the browser, and opens the page the
+   * snapshot was taken on. The browser is expected to be clean, like the ones of the SessionPool.
+   * @param driver the browser
+   */
+  public void restore(@NotNull RemoteWebDriver driver) {
+    driver.get(url.getProtocol() + "://" + url.getAuthority() + ORIGIN_PAGE);
+    Date now = new Date();
+    for (Cookie cookie : cookies) {
+      if (null == cookie.getExpiry() || cookie.getExpiry().after(now)) {
+        driver.manage().addCookie(cookie);
+      }
+    }
+    driver.executeScript(WRITE_STORAGE_SCRIPT, localStorage, sessionStorage);
+    driver.get(url.toString());
+  }
+
+  /**
+   * Removes the cookies of the browser and the local and session storage of the origin it is
+   * showing.
+   * @param driver the browser
+   */
+  public static void clear(@NotNull RemoteWebDriver driver) {
+    driver.manage().deleteAllCookies();
+    driver.executeScript(CLEAR_STORAGE_SCRIPT);
+  }
+
+  /**
+   * Checks if the snapshot is older than the given time to live, or has an expired cookie.
+   * @param timeToLive how long a snapshot can be used after it was taken
+   * @return boolean
+   */
+  public boolean isExpired(@NotNull Duration timeToLive) {
+    Instant now = Instant.now();
+    if (capturedAt.plus(timeToLive).isBefore(now)) {
+      return true;
+    }
+    Date nowDate = Date.from(now);
+    return cookies.stream().anyMatch(cookie -> null != cookie.getExpiry()
+        && cookie.getExpiry().before(nowDate));
+  }
+
+  public URL getUrl() {
+    return url;
+  }
+
+  public Instant getCapturedAt() {
+    return capturedAt;
+  }
+
+  private static Map<String, String> toStrings(Map<String, Object> values) {
+    Map<String, String> strings = new HashMap<>();
+    values.forEach((key, value) -> strings.put(key, String.valueOf(value)));
+    return strings;
+  }
+}
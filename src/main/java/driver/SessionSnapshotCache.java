@@ -0,0 +1,82 @@
+package driver;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Snapshots of the sessions of each test account, taken after a successful login and restored by
+ * the next tests of the same account. A snapshot is used for -DsessionSnapshotTtl seconds (600 by
+ * default) and dropped as soon as the application rejects it. -DsessionSnapshots=false disables
+ * the cache, so every test logs in through the login page.
+ */
+public final class SessionSnapshotCache {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(SessionSnapshotCache.class);
+
+  private static final int DEFAULT_TTL_SECONDS = 600;
+
+  private static final boolean enabled =
+      Boolean.parseBoolean(System.getProperty("sessionSnapshots", "true"));
+
+  private static final Duration timeToLive =
+      Duration.ofSeconds(Integer.getInteger("sessionSnapshotTtl", DEFAULT_TTL_SECONDS));
+
+  private static final Map<String, SessionSnapshot> snapshots = new ConcurrentHashMap<>();
+
+  /**
+   * Private constructor to hide the implicit one.
+   */
+  private SessionSnapshotCache() {
+
+  }
+
+  /**
+   * Gets the snapshot of an account, unless it expired.
+   * @param accountKey the identifier of the account
+   * @return the snapshot, or null if there is no valid snapshot
+   */
+  @Nullable
+  public static SessionSnapshot get(@NotNull String accountKey) {
+    if (!enabled) {
+      return null;
+    }
+    SessionSnapshot snapshot = snapshots.get(accountKey);
+    if (null != snapshot && snapshot.isExpired(timeToLive)) {
+      logger.debug("The session snapshot of {} taken at {} expired", accountKey,
+          snapshot.getCapturedAt());
+      snapshots.remove(accountKey, snapshot);
+      return null;
+    }
+    return snapshot;
+  }
+
+  /**
+   * Saves the snapshot of an account, replacing the previous one.
+   * @param accountKey the identifier of the account
+   * @param snapshot the snapshot taken after the login
+   */
+  public static void put(@NotNull String accountKey, @NotNull SessionSnapshot snapshot) {
+    if (enabled) {
+      snapshots.put(accountKey, snapshot);
+    }
+  }
+
+  /**
+   * Drops the snapshot of an account, after the application rejected it.
+   * @param accountKey the identifier of the account
+   * @param snapshot the rejected snapshot
+   */
+  public static void invalidate(@NotNull String accountKey, @NotNull SessionSnapshot snapshot) {
+    if (snapshots.remove(accountKey, snapshot)) {
+      logger.info("The session snapshot of {} was rejected and dropped", accountKey);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package environment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Binary copy of the parsed configuration, named after the hash of the YAML files it was parsed
+ * from, so the JVMs started after the first one read a few key/value pairs instead of parsing the
+ * YAML again. A changed YAML file has a new hash, and is parsed again.
+ */
+final class ConfigCache {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(ConfigCache.class);
+
+  private static final int FORMAT_VERSION = 1;
+
+  private final Path directory;
+
+  ConfigCache(@NotNull Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Reads the configuration cached for the given hash.
+   * @param hash the hash of the YAML files
+   * @return the flattened configuration, or null if it is not cached
+   */
+  @Nullable
+  Map<String, String> read(@NotNull String hash) {
+    Path file = getFile(hash);
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try (DataInputStream input = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (input.readInt() != FORMAT_VERSION) {
+        return null;
+      }
+      int size = input.readInt();
+      Map<String, String> values = new LinkedHashMap<>();
+      for (int i = 0; i < size; i++) {
+        values.put(input.readUTF(), input.readUTF());
+      }
+      return values;
+    } catch (IOException e) {
+      logger.warn("Unable to read the cached configuration {}", file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Caches the configuration parsed from the YAML files with the given hash. Errors are only
+   * logged, the configuration will be parsed again by the next JVM.
+   * @param hash the hash of the YAML files
+   * @param values the flattened configuration
+   */
+  void write(@NotNull String hash, @NotNull Map<String, String> values) {
+    Path file = getFile(hash);
+    try {
+      Files.createDirectories(directory);
+      Path temporaryFile = Files.createTempFile(directory, hash, ".tmp");
+      try (DataOutputStream output = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(values.size());
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+          output.writeUTF(entry.getKey());
+          output.writeUTF(entry.getValue());
+        }
+      }
+      Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.warn("Unable to cache the configuration in {}", file, e);
+    }
+  }
+
+  private Path getFile(String hash) {
+    return directory.resolve(hash + ".bin");
+  }
+}
@@ -1,16 +1,28 @@
 package environment;
 
-import static com.google.common.io.Files.asByteSource;
-
-
-import java.io.File;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.yaml.snakeyaml.Yaml;
 
+/**
+ * Configuration of the environment under test. config/config.yaml is overlaid with
+ * config/config-[env].yaml when -Denv is set, and each key can be overridden with -Dconfig.[key].
+ * The result is parsed once into an immutable EnvironmentSnapshot, and the parsed YAML is cached
+ * in build/config-cache so the forked JVMs skip the YAML parsing.
+ */
 public final class EnvironmentConfig {
 
   /**
@@ -21,7 +33,11 @@ public final class EnvironmentConfig {
 
   private static final String CONFIG = "config";
 
-  private static Map<String, Object> configMap;
+  private static final String CONFIG_DIRECTORY = "config";
+
+  private static final String OVERRIDE_PREFIX = "config.";
+
+  private static volatile EnvironmentSnapshot snapshot;
 
 
   /**
@@ -33,38 +49,113 @@ public final class EnvironmentConfig {
 
   /**
    * Initializes the environment selected for testing.
+   * @throws IllegalArgumentException if a config file cannot be read or has an invalid value
    */
   public static void initializeEnvironment() {
-    String environmentConfig = CONFIG + ".yaml";
-    configMap = loadConfigFile(environmentConfig);
+    String environment = System.getProperty("env", "");
+    Path baseFile = Paths.get(CONFIG_DIRECTORY, CONFIG + ".yaml");
+    Path overlayFile = environment.isEmpty() ? null
+        : Paths.get(CONFIG_DIRECTORY, CONFIG + "-" + environment + ".yaml");
+
+    byte[] baseYaml = readConfigFile(baseFile);
+    byte[] overlayYaml = null == overlayFile ? new byte[0] : readConfigFile(overlayFile);
+    Hasher hasher = Hashing.sha256().newHasher()
+        .putInt(baseYaml.length).putBytes(baseYaml)
+        .putInt(overlayYaml.length).putBytes(overlayYaml);
+    String hash = hasher.hash().toString();
+
+    ConfigCache cache = new ConfigCache(Paths.get(System.getProperty("configCache",
+        Paths.get("build", "config-cache").toString())));
+    Map<String, String> values = cache.read(hash);
+    if (null == values) {
+      values = new LinkedHashMap<>();
+      flatten("", loadConfigFile(baseFile, baseYaml), values);
+      if (null != overlayFile) {
+        flatten("", loadConfigFile(overlayFile, overlayYaml), values);
+      }
+      cache.write(hash, values);
+    } else {
+      logger.debug("Configuration {} read from the cache", hash);
+    }
+
+    for (String property : System.getProperties().stringPropertyNames()) {
+      if (property.startsWith(OVERRIDE_PREFIX)) {
+        String key = property.substring(OVERRIDE_PREFIX.length());
+        logger.info("Config value {} overridden by -D{}", key, property);
+        values.put(key, System.getProperty(property));
+      }
+    }
+    snapshot = new EnvironmentSnapshot(environment, values);
+    logger.debug("Environment configuration: {}", snapshot);
+  }
+
+  private static byte[] readConfigFile(Path path) {
+    logger.debug("Config file: {}", path);
+    try {
+      return Files.readAllBytes(path);
+    } catch (IOException e) {
+      logger.error("Problem when opening the config file", e);
+      throw new IllegalArgumentException("Unable to read the config file " + path, e);
+    }
   }
 
   /**
    * Load the settings of the config file defined in /config.
-   * @param filename the name of the config file to be opened
+   * @param path the path of the config file
+   * @param yaml the content of the config file
    * @return The settings of the config file in a Key/Value Map
    */
-  private static Map<String, Object> loadConfigFile(String filename) {
-    String path = "config/" + filename;
-    logger.debug("Config file: {}", path);
+  private static Map<String, Object> loadConfigFile(Path path, byte[] yaml) {
+    Map<String, Object> map = new Yaml().load(new String(yaml, StandardCharsets.UTF_8));
+    logger.debug("Content of config file {}: {}", path, map);
+    return null == map ? new LinkedHashMap<>() : map;
+  }
 
-    File initialFile = new File(path);
-    try (InputStream targetStream = asByteSource(initialFile).openStream()) {
-      Yaml yaml = new Yaml();
-      Map<String, Object> map = yaml.load(targetStream);
-      logger.debug("Content of config file: {}", map);
-      return map;
-    } catch (IOException e) {
-      logger.error("Problem when opening the config file", e);
-      throw new IllegalArgumentException();
+  /**
+   * Copies the values of the YAML map, joining the keys of nested maps with dots and the items of
+   * lists with commas.
+   */
+  @SuppressWarnings("unchecked")
+  private static void flatten(String prefix, Map<String, Object> map,
+                              Map<String, String> values) {
+    map.forEach((key, value) -> {
+      if (value instanceof Map) {
+        flatten(prefix + key + ".", (Map<String, Object>) value, values);
+      } else if (value instanceof List) {
+        values.put(prefix + key, ((List<Object>) value).stream().map(String::valueOf)
+            .collect(Collectors.joining(",")));
+      } else if (null != value) {
+        values.put(prefix + key, value.toString());
+      }
+    });
+  }
+
+  /**
+   * Gets the configuration of the environment.
+   * @return EnvironmentSnapshot
+   * @throws IllegalStateException if the environment was not initialized
+   */
+  public static EnvironmentSnapshot getSnapshot() {
+    EnvironmentSnapshot environmentSnapshot = snapshot;
+    if (null == environmentSnapshot) {
+      throw new IllegalStateException("The environment was not initialized");
     }
+    return environmentSnapshot;
+  }
+
+  /**
+   * Gets Blockchain login page URL.
+   * @return URL
+   */
+  public static URL getBlockchainLoginUrl() {
+    return getSnapshot().getBlockchainLoginUrl();
   }
 
   /**
-   * Gets Blockchain login page as string.
-   * @return String
+   * Gets the maximum time to wait for a page to load.
+   * @return Duration
    */
-  public static String getBlockchainLoginUrl() {
-    return configMap.get("blockchain-login").toString();
+  public static Duration getPageLoadTimeout() {
+    return getSnapshot().getPageLoadTimeout();
   }
 }
@@ -0,0 +1,155 @@
+package environment;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable, typed view of the configuration of an environment. The values are parsed once, when
+ * the snapshot is built, so an invalid configuration fails at the start of the suite and the
+ * getters only return fields.
+ */
+public final class EnvironmentSnapshot {
+
+  static final String BLOCKCHAIN_LOGIN = "blockchain-login";
+
+  static final String PAGE_LOAD_TIMEOUT = "page-load-timeout";
+
+  static final String NETWORK_DENY = "network.deny";
+
+  static final String NETWORK_BLOCK_TYPES = "network.block-types";
+
+  private static final Duration DEFAULT_PAGE_LOAD_TIMEOUT = Duration.ofSeconds(20);
+
+  private final String name;
+
+  private final Map<String, String> values;
+
+  private final URL blockchainLoginUrl;
+
+  private final Duration pageLoadTimeout;
+
+  private final List<String> networkDeny;
+
+  private final Set<String> networkBlockTypes;
+
+  /**
+   * Constructor of the EnvironmentSnapshot class.
+   * @param name the name of the environment, empty for the default one
+   * @param values the flattened configuration, keys of nested values are joined with dots
+   * @throws IllegalArgumentException if a value is missing or has a wrong format
+   */
+  EnvironmentSnapshot(@NotNull String name, @NotNull Map<String, String> values) {
+    this.name = name;
+    this.values = Collections.unmodifiableMap(new TreeMap<>(values));
+    this.blockchainLoginUrl = toUrl(BLOCKCHAIN_LOGIN);
+    this.pageLoadTimeout = toDuration(PAGE_LOAD_TIMEOUT, DEFAULT_PAGE_LOAD_TIMEOUT);
+    this.networkDeny = Collections.unmodifiableList(toList(NETWORK_DENY));
+    this.networkBlockTypes = Collections.unmodifiableSet(new TreeSet<>(toList(NETWORK_BLOCK_TYPES)
+        .stream().map(type -> type.toLowerCase(Locale.ROOT)).collect(Collectors.toList())));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public URL getBlockchainLoginUrl() {
+    return blockchainLoginUrl;
+  }
+
+  public Duration getPageLoadTimeout() {
+    return pageLoadTimeout;
+  }
+
+  /**
+   * Gets the URL patterns the browsers must not load, with * as wildcard.
+   * @return unmodifiable List
+   */
+  public List<String> getNetworkDeny() {
+    return networkDeny;
+  }
+
+  /**
+   * Gets the types of resources the browsers must not load: image, media or font.
+   * @return unmodifiable Set
+   */
+  public Set<String> getNetworkBlockTypes() {
+    return networkBlockTypes;
+  }
+
+  /**
+   * Gets all the values of the configuration.
+   * @return unmodifiable Map of the flattened keys to their values
+   */
+  public Map<String, String> getValues() {
+    return values;
+  }
+
+  private URL toUrl(String key) {
+    String value = values.get(key);
+    if (null == value) {
+      throw new IllegalArgumentException("The configuration has no " + key);
+    }
+    try {
+      return new URL(value);
+    } catch (MalformedURLException e) {
+      throw new IllegalArgumentException("The URL format '" + value + "' of " + key
+          + " is not correct", e);
+    }
+  }
+
+  private List<String> toList(String key) {
+    String value = values.get(key);
+    if (null == value || value.trim().isEmpty()) {
+      return new ArrayList<>();
+    }
+    return Arrays.stream(value.split(",")).map(String::trim).filter(item -> !item.isEmpty())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Parses a duration written as a number of seconds, with a unit (500ms, 20s, 2m, 1h) or in the
+   * ISO-8601 format (PT20S).
+   */
+  private Duration toDuration(String key, Duration defaultValue) {
+    String value = values.get(key);
+    if (null == value) {
+      return defaultValue;
+    }
+    String duration = value.trim().toLowerCase(Locale.ROOT);
+    try {
+      if (duration.startsWith("pt")) {
+        return Duration.parse(duration);
+      } else if (duration.endsWith("ms")) {
+        return Duration.ofMillis(Long.parseLong(duration.substring(0, duration.length() - 2)));
+      } else if (duration.endsWith("s")) {
+        return Duration.ofSeconds(Long.parseLong(duration.substring(0, duration.length() - 1)));
+      } else if (duration.endsWith("m")) {
+        return Duration.ofMinutes(Long.parseLong(duration.substring(0, duration.length() - 1)));
+      } else if (duration.endsWith("h")) {
+        return Duration.ofHours(Long.parseLong(duration.substring(0, duration.length() - 1)));
+      }
+      return Duration.ofSeconds(Long.parseLong(duration));
+    } catch (NumberFormatException | DateTimeParseException e) {
+      throw new IllegalArgumentException("The duration '" + value + "' of " + key
+          + " is not correct", e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "EnvironmentSnapshot{name=" + name + ", values=" + values + "}";
+  }
+}
@@ -0,0 +1,180 @@
+package metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram. Values are recorded in microseconds
+ * into 32 linear sub-buckets per power of two, which keeps the percentiles within about 3% of the
+ * recorded values with a fixed amount of memory. Recording does not allocate nor lock: each
+ * histogram must only be written by one thread, and read once that thread is done.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_BUCKET_COUNT = SUB_BUCKET_COUNT * 2;
+  private static final int BUCKET_COUNT =
+      LINEAR_BUCKET_COUNT + (Long.SIZE - SUB_BUCKET_BITS - 2) * SUB_BUCKET_COUNT;
+
+  private final long[] counts = new long[BUCKET_COUNT];
+
+  private long totalCount;
+
+  private long totalMicros;
+
+  private long minMicros = Long.MAX_VALUE;
+
+  private long maxMicros;
+
+  /**
+   * Records a latency.
+   * @param nanos the latency in nanoseconds
+   */
+  public void recordNanos(long nanos) {
+    long micros = Math.max(0, nanos / 1_000);
+    counts[bucketIndex(micros)]++;
+    totalCount++;
+    totalMicros += micros;
+    minMicros = Math.min(minMicros, micros);
+    maxMicros = Math.max(maxMicros, micros);
+  }
+
+  /**
+   * Adds all the values recorded in another histogram to this one.
+   * @param other the histogram to merge
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    totalMicros += other.totalMicros;
+    minMicros = Math.min(minMicros, other.minMicros);
+    maxMicros = Math.max(maxMicros, other.maxMicros);
+  }
+
+  /**
+   * Creates a copy of the histogram.
+   * @return LatencyHistogram
+   */
+  public LatencyHistogram copy() {
+    LatencyHistogram copy = new LatencyHistogram();
+    copy.add(this);
+    return copy;
+  }
+
+  /**
+   * Creates a histogram from the buckets saved with getBucketCounts(), for instance to merge the
+   * timings of several JVMs.
+   * @param bucketCounts the count of each non empty bucket
+   * @param sumMicros the sum of the recorded values in microseconds
+   * @param minMicros the lowest recorded value in microseconds
+   * @param maxMicros the highest recorded value in microseconds
+   * @return LatencyHistogram
+   */
+  public static LatencyHistogram fromBuckets(Map<Integer, Long> bucketCounts, long sumMicros,
+                                             long minMicros, long maxMicros) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    bucketCounts.forEach((index, count) -> {
+      histogram.counts[index] += count;
+      histogram.totalCount += count;
+    });
+    histogram.totalMicros = sumMicros;
+    histogram.minMicros = histogram.totalCount == 0 ? Long.MAX_VALUE : minMicros;
+    histogram.maxMicros = maxMicros;
+    return histogram;
+  }
+
+  /**
+   * Gets the count of each non empty bucket.
+   * @return Map of bucket index to count
+   */
+  public Map<Integer, Long> getBucketCounts() {
+    Map<Integer, Long> bucketCounts = new TreeMap<>();
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      if (counts[i] > 0) {
+        bucketCounts.put(i, counts[i]);
+      }
+    }
+    return bucketCounts;
+  }
+
+  public long getSumMicros() {
+    return totalMicros;
+  }
+
+  public long getMinMicros() {
+    return totalCount == 0 ? 0 : minMicros;
+  }
+
+  public long getMaxMicros() {
+    return maxMicros;
+  }
+
+  public long getCount() {
+    return totalCount;
+  }
+
+  public double getSumMillis() {
+    return totalMicros / 1_000.0;
+  }
+
+  public double getMinMillis() {
+    return totalCount == 0 ? 0 : minMicros / 1_000.0;
+  }
+
+  public double getMaxMillis() {
+    return maxMicros / 1_000.0;
+  }
+
+  public double getMeanMillis() {
+    return totalCount == 0 ? 0 : getSumMillis() / totalCount;
+  }
+
+  /**
+   * Gets the value below which the given percentage of the recorded latencies fall.
+   * @param percentile between 0 and 100
+   * @return the latency in milliseconds
+   */
+  public double getPercentileMillis(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestValueInBucket(i), maxMicros) / 1_000.0;
+      }
+    }
+    return getMaxMillis();
+  }
+
+  private static int bucketIndex(long micros) {
+    if (micros < LINEAR_BUCKET_COUNT) {
+      return (int) micros;
+    }
+    int magnitude = (Long.SIZE - 1 - Long.numberOfLeadingZeros(micros)) - SUB_BUCKET_BITS;
+    int subBucket = (int) (micros >>> magnitude) - SUB_BUCKET_COUNT;
+    return LINEAR_BUCKET_COUNT + (magnitude - 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  private static long highestValueInBucket(int index) {
+    if (index < LINEAR_BUCKET_COUNT) {
+      return index;
+    }
+    int magnitude = (index - LINEAR_BUCKET_COUNT) / SUB_BUCKET_COUNT + 1;
+    long subBucket = (index - LINEAR_BUCKET_COUNT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+    return ((subBucket + 1) << magnitude) - 1;
+  }
+
+  @Override
+  public String toString() {
+    return "LatencyHistogram{count=" + totalCount + ", p50=" + getPercentileMillis(50)
+        + "ms, max=" + getMaxMillis() + "ms, buckets=" + Arrays.stream(counts).filter(c -> c > 0)
+        .count() + "}";
+  }
+}
@@ -0,0 +1,159 @@
+package metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import metrics.StepMetrics.StepKey;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes the step latencies as JSON (timings.json) and in the Prometheus text exposition format
+ * (timings.prom), with the p50, p95 and p99 of each page and action. The JSON file also keeps the
+ * buckets of each histogram, so the timings of several JVMs can be loaded and merged.
+ */
+public final class MetricsExporter {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(MetricsExporter.class);
+
+  private static final String JSON_FILE = "timings.json";
+
+  private static final String PROMETHEUS_FILE = "timings.prom";
+
+  private static final String METRIC_NAME = "e2e_step_latency_seconds";
+
+  private static final double[] PERCENTILES = {50, 95, 99};
+
+  /**
+   * Private constructor to hide the implicit one.
+   */
+  private MetricsExporter() {
+
+  }
+
+  /**
+   * Writes timings.json and timings.prom into the given directory.
+   * @param histograms the merged histogram of each step
+   * @param directory the directory where the files are written
+   */
+  public static void export(@NotNull Map<StepKey, LatencyHistogram> histograms,
+                            @NotNull Path directory) {
+    try {
+      Files.createDirectories(directory);
+      writeJson(histograms, directory.resolve(JSON_FILE));
+      writePrometheus(histograms, directory.resolve(PROMETHEUS_FILE));
+      logger.info("Step timings of {} steps written to {}", histograms.size(), directory);
+    } catch (IOException e) {
+      logger.error("Unable to write the step timings to {}", directory, e);
+    }
+  }
+
+  /**
+   * Loads the histograms of the timings.json file written by export().
+   * @param directory the directory the timings were exported to
+   * @return the histogram of each step, empty if there is no timings file
+   * @throws IOException if the timings file cannot be read
+   */
+  public static Map<StepKey, LatencyHistogram> load(@NotNull Path directory) throws IOException {
+    Map<StepKey, LatencyHistogram> histograms = new TreeMap<>();
+    Path file = directory.resolve(JSON_FILE);
+    if (!Files.exists(file)) {
+      return histograms;
+    }
+    JsonNode root = new ObjectMapper().readTree(file.toFile());
+    for (JsonNode step : root.path("steps")) {
+      JsonNode histogram = step.path("histogram");
+      Map<Integer, Long> bucketCounts = new TreeMap<>();
+      Iterator<Map.Entry<String, JsonNode>> buckets = histogram.path("buckets").fields();
+      while (buckets.hasNext()) {
+        Map.Entry<String, JsonNode> bucket = buckets.next();
+        bucketCounts.put(Integer.valueOf(bucket.getKey()), bucket.getValue().asLong());
+      }
+      histograms.put(new StepKey(step.path("page").asText(), step.path("action").asText()),
+          LatencyHistogram.fromBuckets(bucketCounts, histogram.path("sum_us").asLong(),
+              histogram.path("min_us").asLong(), histogram.path("max_us").asLong()));
+    }
+    return histograms;
+  }
+
+  private static void writeJson(Map<StepKey, LatencyHistogram> histograms, Path file)
+      throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    ObjectNode root = mapper.createObjectNode();
+    ArrayNode steps = root.putArray("steps");
+    histograms.forEach((key, histogram) -> {
+      ObjectNode step = steps.addObject();
+      step.put("page", key.getPage());
+      step.put("action", key.getAction());
+      addStatistics(step, histogram);
+      ObjectNode buckets = step.putObject("histogram");
+      buckets.put("sum_us", histogram.getSumMicros());
+      buckets.put("min_us", histogram.getMinMicros());
+      buckets.put("max_us", histogram.getMaxMicros());
+      ObjectNode counts = buckets.putObject("buckets");
+      histogram.getBucketCounts().forEach((index, count) -> counts.put(index.toString(), count));
+    });
+    addGroupedStatistics(root.putObject("pages"), histograms, StepKey::getPage);
+    addGroupedStatistics(root.putObject("actions"), histograms, StepKey::getAction);
+    mapper.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), root);
+  }
+
+  private static void addGroupedStatistics(ObjectNode node,
+                                           Map<StepKey, LatencyHistogram> histograms,
+                                           Function<StepKey, String> groupBy) {
+    Map<String, LatencyHistogram> groups = new TreeMap<>();
+    histograms.forEach((key, histogram) -> groups
+        .computeIfAbsent(groupBy.apply(key), group -> new LatencyHistogram()).add(histogram));
+    groups.forEach((group, histogram) -> addStatistics(node.putObject(group), histogram));
+  }
+
+  private static void addStatistics(ObjectNode node, LatencyHistogram histogram) {
+    node.put("count", histogram.getCount());
+    node.put("min_ms", histogram.getMinMillis());
+    node.put("mean_ms", histogram.getMeanMillis());
+    node.put("max_ms", histogram.getMaxMillis());
+    for (double percentile : PERCENTILES) {
+      node.put("p" + (int) percentile + "_ms", histogram.getPercentileMillis(percentile));
+    }
+  }
+
+  private static void writePrometheus(Map<StepKey, LatencyHistogram> histograms, Path file)
+      throws IOException {
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writer.write("# HELP " + METRIC_NAME + " Latency of the page object steps.\n");
+      writer.write("# TYPE " + METRIC_NAME + " summary\n");
+      for (Map.Entry<StepKey, LatencyHistogram> entry : histograms.entrySet()) {
+        String labels = "page=\"" + escape(entry.getKey().getPage()) + "\",action=\""
+            + escape(entry.getKey().getAction()) + "\"";
+        LatencyHistogram histogram = entry.getValue();
+        for (double percentile : PERCENTILES) {
+          writer.write(String.format(Locale.ROOT, "%s{%s,quantile=\"%s\"} %.6f\n", METRIC_NAME,
+              labels, percentile / 100, histogram.getPercentileMillis(percentile) / 1_000));
+        }
+        writer.write(String.format(Locale.ROOT, "%s_sum{%s} %.6f\n", METRIC_NAME, labels,
+            histogram.getSumMillis() / 1_000));
+        writer.write(String.format(Locale.ROOT, "%s_count{%s} %d\n", METRIC_NAME, labels,
+            histogram.getCount()));
+      }
+    }
+  }
+
+  private static String escape(String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
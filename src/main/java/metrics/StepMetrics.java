@@ -0,0 +1,150 @@
+package metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Records how long each step of the page objects takes (page loads, element lookups, typing,
+ * clicks and waits). Every thread records into its own histograms, without locks, and the
+ * histograms of all the threads are merged when the suite finishes.
+ */
+public final class StepMetrics {
+
+  /**
+   * Histograms of every thread that recorded a step, kept to be merged at the end of the suite.
+   */
+  private static final Queue<Map<StepKey, LatencyHistogram>> recorders =
+      new ConcurrentLinkedQueue<>();
+
+  private static final ThreadLocal<Map<StepKey, LatencyHistogram>> threadRecorder =
+      ThreadLocal.withInitial(() -> {
+        Map<StepKey, LatencyHistogram> recorder = new HashMap<>();
+        recorders.add(recorder);
+        return recorder;
+      });
+
+  /**
+   * Private constructor to hide the implicit one.
+   */
+  private StepMetrics() {
+
+  }
+
+  /**
+   * Records the latency of a step.
+   * @param page the page object the step belongs to
+   * @param action the kind of step, like load, find, type, click or wait
+   * @param nanos the latency in nanoseconds
+   */
+  public static void record(@NotNull String page, @NotNull String action, long nanos) {
+    threadRecorder.get()
+        .computeIfAbsent(new StepKey(page, action), key -> new LatencyHistogram())
+        .recordNanos(nanos);
+  }
+
+  /**
+   * Runs a step and records how long it took, even if it fails.
+   * @param page the page object the step belongs to
+   * @param action the kind of step
+   * @param step the step to run
+   * @param <T> the type returned by the step
+   * @return the value returned by the step
+   */
+  public static <T> T time(@NotNull String page, @NotNull String action,
+                           @NotNull Supplier<T> step) {
+    final long start = System.nanoTime();
+    try {
+      return step.get();
+    } finally {
+      record(page, action, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Runs a step and records how long it took, even if it fails.
+   * @param page the page object the step belongs to
+   * @param action the kind of step
+   * @param step the step to run
+   */
+  public static void time(@NotNull String page, @NotNull String action, @NotNull Runnable step) {
+    final long start = System.nanoTime();
+    try {
+      step.run();
+    } finally {
+      record(page, action, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Merges the histograms of all the threads. Must be called once the threads stopped recording,
+   * usually in @AfterSuite.
+   * @return the merged histogram of each step, sorted by page and action
+   */
+  public static Map<StepKey, LatencyHistogram> merge() {
+    Map<StepKey, LatencyHistogram> merged = new TreeMap<>();
+    for (Map<StepKey, LatencyHistogram> recorder : recorders) {
+      recorder.forEach((key, histogram) -> merged.merge(key, histogram.copy(),
+          (total, other) -> {
+            total.add(other);
+            return total;
+          }));
+    }
+    return merged;
+  }
+
+  /**
+   * Identifies a step by the page object and the kind of action.
+   */
+  public static final class StepKey implements Comparable<StepKey> {
+
+    private final String page;
+
+    private final String action;
+
+    public StepKey(@NotNull String page, @NotNull String action) {
+      this.page = page;
+      this.action = action;
+    }
+
+    public String getPage() {
+      return page;
+    }
+
+    public String getAction() {
+      return action;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof StepKey)) {
+        return false;
+      }
+      StepKey that = (StepKey) other;
+      return page.equals(that.page) && action.equals(that.action);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * page.hashCode() + action.hashCode();
+    }
+
+    @Override
+    public int compareTo(@NotNull StepKey other) {
+      int byPage = page.compareTo(other.page);
+      return byPage != 0 ? byPage : action.compareTo(other.action);
+    }
+
+    @Override
+    public String toString() {
+      return page + "." + action;
+    }
+  }
+}
@@ -1,8 +1,22 @@
 package pageobjects.base;
 
 import driver.DriverBase;
+import driver.NetworkBlocking;
+import environment.EnvironmentConfig;
 import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import metrics.StepMetrics;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import utils.FailureVideoRecorder;
+import utils.TestReporter;
 
 /**
  * Base page.
@@ -12,8 +26,229 @@ public abstract class AbstractPage extends AbstractPageObject {
   protected WebDriver driver;
   protected static final int TIMEOUT_TO_LOAD_PAGE = 20;
 
+  private final PageReadiness pageReadiness;
+
+  private final LocatorResolver locatorResolver;
+
+  private final PageWaits pageWaits;
+
+  private final FormFiller formFiller;
+
   protected AbstractPage() {
     super(Clock.systemDefaultZone(), TIMEOUT_TO_LOAD_PAGE);
     driver = DriverBase.getDriver();
+    pageReadiness = new PageReadiness((JavascriptExecutor) driver);
+    locatorResolver = new LocatorResolver((JavascriptExecutor) driver);
+    pageWaits = new PageWaits((JavascriptExecutor) driver);
+    formFiller = new FormFiller((JavascriptExecutor) driver);
+  }
+
+  /**
+   * Looks up all the locators of the set with a single round trip to the browser.
+   * @param locatorSet the locators to look up
+   * @return the element, presence and visibility of each locator
+   */
+  protected LocatorLookup findAll(LocatorSet locatorSet) {
+    return timed("find", () -> locatorResolver.resolve(locatorSet));
+  }
+
+  /**
+   * Finds an element of the page, recording the time of the lookup.
+   * @param by the locator of the element
+   * @return WebElement
+   */
+  protected WebElement find(By by) {
+    return timed("find", () -> driver.findElement(by));
+  }
+
+  /**
+   * Types the text into the element, recording the time of the lookup and of the typing.
+   * @param by the locator of the element
+   * @param text the text to type
+   */
+  protected void type(By by, String text) {
+    WebElement element = find(by);
+    timed("type", () -> element.sendKeys(text));
+  }
+
+  /**
+   * Fills the fields of the form: the fields set with Form.set() in a single script, then the
+   * fields that need real keystrokes with sendKeys. Records the time of the fill.
+   * @param form the fields and their values
+   * @throws NoSuchElementException if a field of the form is not present
+   */
+  protected void fill(Form form) {
+    List<String> missingSelectors = timed("fill", () -> formFiller.fill(form));
+    if (!missingSelectors.isEmpty()) {
+      throw new NoSuchElementException("Fields of the form not found: " + missingSelectors);
+    }
+    for (Form.Field field : form.getTypedFields()) {
+      type(field.getLocator(), field.getValue());
+    }
+  }
+
+  /**
+   * Clicks the element, recording the time of the click.
+   * @param element the element to click
+   */
+  protected void click(WebElement element) {
+    timed("click", element::click);
+  }
+
+  /**
+   * Waits until the element is visible, enabled, not moving and not covered by another element,
+   * recording the time of the wait.
+   * @param locator the locator of the element
+   * @param timeout maximum time to wait
+   * @return the actionable element
+   * @throws org.openqa.selenium.TimeoutException if the element is not actionable in time
+   */
+  protected WebElement waitUntilActionable(Locator locator, Duration timeout) {
+    return timed("wait", () -> pageWaits.awaitActionable(locator, timeout));
+  }
+
+  /**
+   * Waits until the page has no pending request for the quiet period, recording the time of the
+   * wait.
+   * @param quietPeriod how long the network must stay idle
+   * @param timeout maximum time to wait
+   * @return true if the network is idle, false on timeout
+   */
+  protected boolean waitForNetworkIdle(Duration quietPeriod, Duration timeout) {
+    return timed("wait", () -> pageWaits.awaitNetworkIdle(quietPeriod, timeout));
+  }
+
+  /**
+   * Waits until the DOM of the page does not change for the quiet period, recording the time of
+   * the wait.
+   * @param quietPeriod how long the DOM must stay unchanged
+   * @param timeout maximum time to wait
+   * @return true if the DOM is stable, false on timeout
+   */
+  protected boolean waitForDomStable(Duration quietPeriod, Duration timeout) {
+    return timed("wait", () -> pageWaits.awaitDomStable(quietPeriod, timeout));
+  }
+
+  /**
+   * Runs a step of the page and records its latency in the step metrics. A frame of the failure
+   * video is taken after the step.
+   * @param action the kind of step, like find, type, click or wait
+   * @param step the step to run
+   * @param <T> the type returned by the step
+   * @return the value returned by the step
+   */
+  protected <T> T timed(String action, Supplier<T> step) {
+    try {
+      return StepMetrics.time(getClass().getSimpleName(), action, step);
+    } finally {
+      FailureVideoRecorder.captureFrame();
+    }
+  }
+
+  /**
+   * Runs a step of the page and records its latency in the step metrics. A frame of the failure
+   * video is taken after the step.
+   * @param action the kind of step, like find, type, click or wait
+   * @param step the step to run
+   */
+  protected void timed(String action, Runnable step) {
+    try {
+      StepMetrics.time(getClass().getSimpleName(), action, step);
+    } finally {
+      FailureVideoRecorder.captureFrame();
+    }
+  }
+
+  /**
+   * Gets the locators that must be present in the page to consider it loaded. Pages that declare
+   * them are loaded with a single event driven wait instead of polling isLoaded().
+   * @return the set of required locators, empty by default
+   */
+  protected LocatorSet getRequiredLocators() {
+    return LocatorSet.of();
+  }
+
+  /**
+   * Gets the URL patterns, with * as wildcard, the page does not need on top of the ones denied by
+   * the network.deny configuration.
+   * @return the list of patterns, empty by default
+   */
+  protected List<String> getDeniedUrls() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Gets the URL patterns denied by the configuration that the page needs.
+   * @return the list of patterns, empty by default
+   */
+  protected List<String> getAllowedUrls() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Gets the name of the page used in the test report.
+   * @return String
+   */
+  protected String getPageName() {
+    return getClass().getSimpleName();
+  }
+
+  /**
+   * Loads the page if it is not loaded yet and waits until all the required locators are present.
+   * Falls back to the SlowLoadableComponent polling for the pages without required locators.
+   * @return the loaded page
+   */
+  @Override
+  public AbstractPageObject get() {
+    LocatorSet requiredLocators = getRequiredLocators();
+    if (requiredLocators.isEmpty()) {
+      return super.get();
+    }
+    final long start = System.nanoTime();
+    NetworkBlocking.apply(DriverBase.getDriver(), getDeniedUrls(), getAllowedUrls());
+    List<String> missingSelectors = timed("find",
+        () -> pageReadiness.findMissing(requiredLocators));
+    if (!missingSelectors.isEmpty()) {
+      final long loadCount = pageReadiness.getLoadCount();
+      timed("navigate", this::load);
+      missingSelectors = timed("wait", () -> pageReadiness.awaitPresent(requiredLocators,
+          loadCount, EnvironmentConfig.getPageLoadTimeout()));
+    }
+    final long loadTime = System.nanoTime() - start;
+    StepMetrics.record(getClass().getSimpleName(), "load", loadTime);
+    if (!missingSelectors.isEmpty()) {
+      throwNotLoadedException("The " + getPageName() + " page was not loaded correctly. "
+          + "Missing elements: " + missingSelectors);
+    }
+    final long timeElapsed = TimeUnit.NANOSECONDS.toMillis(loadTime);
+    TestReporter.addScreenshotToReport("The " + getPageName() + " page was loaded correctly in "
+        + timeElapsed + " milliseconds.");
+    return this;
+  }
+
+  /**
+   * Waits until all the required locators are present, without loading the page.
+   * @param timeout maximum time to wait
+   * @return true if the page is loaded, false if elements are still missing after the timeout
+   */
+  public boolean waitUntilLoaded(Duration timeout) {
+    return timed("wait", () -> pageReadiness.awaitPresent(getRequiredLocators(), timeout))
+        .isEmpty();
+  }
+
+  /**
+   * Checks once, in a single round trip, that all the required locators are present.
+   */
+  @Override
+  protected void isLoaded() throws Error {
+    LocatorSet requiredLocators = getRequiredLocators();
+    if (requiredLocators.isEmpty()) {
+      return;
+    }
+    List<String> missingSelectors = pageReadiness.findMissing(requiredLocators);
+    if (!missingSelectors.isEmpty()) {
+      throwNotLoadedException("The " + getPageName() + " page is not loaded. "
+          + "Missing elements: " + missingSelectors);
+    }
   }
 }
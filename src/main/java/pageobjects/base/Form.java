@@ -0,0 +1,83 @@
+package pageobjects.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Values to enter in the fields of a form, filled by AbstractPage.fill(). The fields added with
+ * set() are filled together by a single script that sets their values and dispatches the input and
+ * change events of the browser. The fields added with type() need real keystrokes, for instance
+ * because the page listens to key events, and are typed with sendKeys after the other fields.
+ */
+public final class Form {
+
+  private final List<Field> scriptedFields = new ArrayList<>();
+
+  private final List<Field> typedFields = new ArrayList<>();
+
+  /**
+   * Sets the value of a field with the script. For checkboxes and radio buttons, "true" checks the
+   * field and any other value unchecks it.
+   * @param locator the locator of the field
+   * @param value the value of the field
+   * @return this Form
+   */
+  public Form set(@NotNull Locator locator, @NotNull String value) {
+    scriptedFields.add(new Field(locator, value));
+    return this;
+  }
+
+  /**
+   * Types the value into a field that needs real keystrokes.
+   * @param locator the locator of the field
+   * @param value the text to type
+   * @return this Form
+   */
+  public Form type(@NotNull Locator locator, @NotNull String value) {
+    typedFields.add(new Field(locator, value));
+    return this;
+  }
+
+  List<Field> getScriptedFields() {
+    return Collections.unmodifiableList(scriptedFields);
+  }
+
+  List<Field> getTypedFields() {
+    return Collections.unmodifiableList(typedFields);
+  }
+
+  @Override
+  public String toString() {
+    return "Form{set=" + scriptedFields + ", typed=" + typedFields + "}";
+  }
+
+  /**
+   * A field of the form and its value.
+   */
+  static final class Field {
+
+    private final Locator locator;
+
+    private final String value;
+
+    private Field(Locator locator, String value) {
+      this.locator = locator;
+      this.value = value;
+    }
+
+    Locator getLocator() {
+      return locator;
+    }
+
+    String getValue() {
+      return value;
+    }
+
+    @Override
+    public String toString() {
+      return locator.getCssSelector();
+    }
+  }
+}
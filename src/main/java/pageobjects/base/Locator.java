@@ -0,0 +1,71 @@
+package pageobjects.base;
+
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+
+/**
+ * CSS selector that can be used as a regular By, and that also keeps the selector text so it can
+ * be passed to the scripts injected in the page.
+ */
+public final class Locator extends By {
+
+  private final String cssSelector;
+
+  private final By by;
+
+  private Locator(String cssSelector) {
+    this.cssSelector = cssSelector;
+    this.by = By.cssSelector(cssSelector);
+  }
+
+  /**
+   * Creates a Locator from a CSS selector.
+   * @param cssSelector the CSS selector of the element
+   * @return Locator
+   */
+  public static Locator css(@NotNull String cssSelector) {
+    return new Locator(cssSelector);
+  }
+
+  /**
+   * Gets the CSS selector of the locator.
+   * @return String
+   */
+  public String getCssSelector() {
+    return cssSelector;
+  }
+
+  @Override
+  public List<WebElement> findElements(SearchContext context) {
+    return by.findElements(context);
+  }
+
+  @Override
+  public WebElement findElement(SearchContext context) {
+    return by.findElement(context);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof Locator)) {
+      return false;
+    }
+    return cssSelector.equals(((Locator) other).cssSelector);
+  }
+
+  @Override
+  public int hashCode() {
+    return cssSelector.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return by.toString();
+  }
+}
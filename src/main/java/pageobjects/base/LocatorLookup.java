@@ -0,0 +1,87 @@
+package pageobjects.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebElement;
+
+/**
+ * Result of resolving a LocatorSet in a single round trip: the element found for each locator,
+ * and whether it is present and visible.
+ */
+public final class LocatorLookup {
+
+  private final Map<Locator, WebElement> elements = new LinkedHashMap<>();
+
+  private final Map<Locator, Boolean> presence = new LinkedHashMap<>();
+
+  private final Map<Locator, Boolean> visibility = new LinkedHashMap<>();
+
+  LocatorLookup(@NotNull LocatorSet locatorSet, @NotNull List<List<Object>> results) {
+    List<Locator> locators = locatorSet.getLocators();
+    for (int i = 0; i < locators.size(); i++) {
+      Locator locator = locators.get(i);
+      List<Object> result = results.get(i);
+      WebElement element = (WebElement) result.get(0);
+      elements.put(locator, element);
+      presence.put(locator, null != element);
+      visibility.put(locator, Boolean.TRUE.equals(result.get(1)));
+    }
+  }
+
+  /**
+   * Gets the element found for the locator.
+   * @param locator a locator of the set
+   * @return WebElement
+   * @throws NoSuchElementException if the element was not present
+   */
+  public WebElement getElement(@NotNull Locator locator) {
+    WebElement element = elements.get(locator);
+    if (null == element) {
+      throw new NoSuchElementException("Unable to locate element: " + locator);
+    }
+    return element;
+  }
+
+  public boolean isPresent(@NotNull Locator locator) {
+    return presence.getOrDefault(locator, false);
+  }
+
+  public boolean isVisible(@NotNull Locator locator) {
+    return visibility.getOrDefault(locator, false);
+  }
+
+  /**
+   * Gets whether each locator of the set was present, in the order of the set.
+   * @return Map of Locator to Boolean
+   */
+  public Map<Locator, Boolean> getPresence() {
+    return Collections.unmodifiableMap(presence);
+  }
+
+  /**
+   * Gets whether each locator of the set was visible, in the order of the set.
+   * @return Map of Locator to Boolean
+   */
+  public Map<Locator, Boolean> getVisibility() {
+    return Collections.unmodifiableMap(visibility);
+  }
+
+  /**
+   * Gets the CSS selectors of the locators that were not present.
+   * @return List of String
+   */
+  public List<String> getMissing() {
+    List<String> missing = new ArrayList<>();
+    presence.forEach((locator, present) -> {
+      if (!present) {
+        missing.add(locator.getCssSelector());
+      }
+    });
+    return missing;
+  }
+}
@@ -0,0 +1,39 @@
+package pageobjects.base;
+
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.openqa.selenium.JavascriptExecutor;
+
+/**
+ * Resolves all the locators of a LocatorSet with one script, instead of one findElement round
+ * trip per locator.
+ */
+final class LocatorResolver {
+
+  /**
+   * Returns one [element, visible] pair per selector, element being null when it is not present.
+   * arguments[0]: list of CSS selectors.
+   */
+  private static final String RESOLVE_SELECTORS_SCRIPT = ""
+      + "return arguments[0].map(function (selector) {\n"
+      + "  var element = document.querySelector(selector);\n"
+      + "  if (!element) { return [null, false]; }\n"
+      + "  var style = window.getComputedStyle(element);\n"
+      + "  var visible = style.visibility !== 'hidden' && style.display !== 'none'\n"
+      + "      && parseFloat(style.opacity) > 0 && element.getClientRects().length > 0;\n"
+      + "  return [element, visible];\n"
+      + "});\n";
+
+  private final JavascriptExecutor javascriptExecutor;
+
+  LocatorResolver(@NotNull JavascriptExecutor javascriptExecutor) {
+    this.javascriptExecutor = javascriptExecutor;
+  }
+
+  @SuppressWarnings("unchecked")
+  LocatorLookup resolve(@NotNull LocatorSet locatorSet) {
+    List<List<Object>> results = (List<List<Object>>) javascriptExecutor
+        .executeScript(RESOLVE_SELECTORS_SCRIPT, locatorSet.getCssSelectors());
+    return new LocatorLookup(locatorSet, results);
+  }
+}
@@ -0,0 +1,77 @@
+package pageobjects.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable group of locators that are looked up together. Pages declare them once as static
+ * constants and resolve the whole group with a single WebDriver round trip.
+ */
+public final class LocatorSet implements Iterable<Locator> {
+
+  private static final LocatorSet EMPTY = new LocatorSet(Collections.emptyList());
+
+  private final List<Locator> locators;
+
+  private final List<String> cssSelectors;
+
+  private LocatorSet(List<Locator> locators) {
+    this.locators = Collections.unmodifiableList(locators);
+    List<String> selectors = new ArrayList<>(locators.size());
+    for (Locator locator : locators) {
+      selectors.add(locator.getCssSelector());
+    }
+    this.cssSelectors = Collections.unmodifiableList(selectors);
+  }
+
+  /**
+   * Creates a LocatorSet. Duplicated locators are kept once, in the order they were first given.
+   * @param locators the locators of the set
+   * @return LocatorSet
+   */
+  public static LocatorSet of(@NotNull Locator... locators) {
+    if (locators.length == 0) {
+      return EMPTY;
+    }
+    return new LocatorSet(new ArrayList<>(new LinkedHashSet<>(Arrays.asList(locators))));
+  }
+
+  /**
+   * Gets the locators of the set in the order they were declared.
+   * @return List of Locator
+   */
+  public List<Locator> getLocators() {
+    return locators;
+  }
+
+  /**
+   * Gets the CSS selectors of the locators in the order they were declared.
+   * @return List of String
+   */
+  public List<String> getCssSelectors() {
+    return cssSelectors;
+  }
+
+  public boolean isEmpty() {
+    return locators.isEmpty();
+  }
+
+  public int size() {
+    return locators.size();
+  }
+
+  @Override
+  public Iterator<Locator> iterator() {
+    return locators.iterator();
+  }
+
+  @Override
+  public String toString() {
+    return cssSelectors.toString();
+  }
+}
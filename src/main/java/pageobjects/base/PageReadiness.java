@@ -0,0 +1,252 @@
+package pageobjects.base;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import driver.DevToolsConnection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.openqa.selenium.JavascriptException;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+/**
+ * Waits for the elements a page needs without polling from the test. A single asynchronous script
+ * is injected in the page: it checks the selectors when the DOM changes (MutationObserver, at most
+ * once per animation frame) and returns as soon as all of them are present, or when the timeout
+ * expires. Each check costs one WebDriver round trip, whatever the number of selectors. With
+ * BrowserType.CHROME_CDP the script runs through the DevTools connection of the browser instead.
+ */
+final class PageReadiness {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(PageReadiness.class);
+
+  /**
+   * Resolves with the list of selectors that are still missing: empty when the page is ready.
+   * arguments[0]: list of CSS selectors, arguments[1]: timeout in milliseconds.
+   */
+  private static final String AWAIT_SELECTORS_SCRIPT = ""
+      + "var selectors = arguments[0];\n"
+      + "var timeout = arguments[1];\n"
+      + "var done = arguments[arguments.length - 1];\n"
+      + "var finished = false;\n"
+      + "var observer = null;\n"
+      + "var timer = null;\n"
+      + "var frameRequested = false;\n"
+      + "function missing() {\n"
+      + "  return selectors.filter(function (s) { return !document.querySelector(s); });\n"
+      + "}\n"
+      + "function finish(result) {\n"
+      + "  if (finished) { return; }\n"
+      + "  finished = true;\n"
+      + "  if (observer) { observer.disconnect(); }\n"
+      + "  if (timer) { clearTimeout(timer); }\n"
+      + "  done(result);\n"
+      + "}\n"
+      + "function check() {\n"
+      + "  frameRequested = false;\n"
+      + "  if (missing().length === 0) { finish([]); }\n"
+      + "}\n"
+      + "var pending = missing();\n"
+      + "if (pending.length === 0 || timeout <= 0) { finish(pending); return; }\n"
+      + "observer = new MutationObserver(function () {\n"
+      + "  if (frameRequested) { return; }\n"
+      + "  frameRequested = true;\n"
+      + "  if (document.hidden) { setTimeout(check, 0); } else { requestAnimationFrame(check); }\n"
+      + "});\n"
+      + "observer.observe(document, {childList: true, subtree: true, attributes: true});\n"
+      + "timer = setTimeout(function () { finish(missing()); }, timeout);\n";
+
+  /**
+   * Time the DevTools command may take on top of the timeout of the script.
+   */
+  private static final Duration SCRIPT_TIMEOUT_MARGIN = Duration.ofSeconds(5);
+
+  /**
+   * The error of a script whose document is unloaded by a navigation, as reported by the drivers.
+   */
+  private static final String DOCUMENT_UNLOADED = "document unloaded";
+
+  /**
+   * The DevTools error of a script whose document is unloaded by a navigation.
+   */
+  private static final String CONTEXT_DESTROYED = "Execution context was destroyed";
+
+  /**
+   * Time the new document gets before the script is injected again.
+   */
+  private static final long RETRY_PAUSE_MILLIS = 50;
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private final JavascriptExecutor javascriptExecutor;
+
+  /**
+   * Constructor of the PageReadiness class.
+   * @param javascriptExecutor the driver the script is executed with
+   */
+  PageReadiness(@NotNull JavascriptExecutor javascriptExecutor) {
+    this.javascriptExecutor = javascriptExecutor;
+  }
+
+  /**
+   * Checks once which locators are not present in the page yet, without waiting.
+   * @param locators the locators the page needs
+   * @return the CSS selectors that are missing, empty if the page is ready
+   */
+  List<String> findMissing(@NotNull LocatorSet locators) {
+    return runScript(locators.getCssSelectors(), Duration.ZERO);
+  }
+
+  /**
+   * Gets the number of load events of the page, to wait for the document of a navigation with
+   * awaitPresent().
+   * @return the load count of the DevTools connection, 0 without DevTools connection
+   */
+  long getLoadCount() {
+    DevToolsConnection connection = getDevToolsConnection();
+    return null == connection ? 0 : connection.getPageEvents().getLoadCount();
+  }
+
+  /**
+   * Waits until the document of a navigation is loaded and all the locators are present in it.
+   * With BrowserType.CHROME_CDP the load event pushed by the browser is awaited first, so the
+   * script is injected in the new document instead of the one being unloaded.
+   * @param locators the locators the page needs
+   * @param previousLoadCount the load count before the navigation, from getLoadCount()
+   * @param timeout maximum time to wait
+   * @return the CSS selectors that are still missing, empty if the page is ready
+   */
+  List<String> awaitPresent(@NotNull LocatorSet locators, long previousLoadCount,
+                            @NotNull Duration timeout) {
+    DevToolsConnection connection = getDevToolsConnection();
+    if (null == connection) {
+      return awaitPresent(locators, timeout);
+    }
+    final long start = System.nanoTime();
+    connection.getPageEvents().awaitLoad(previousLoadCount, timeout);
+    return awaitPresent(locators, timeout.minusNanos(System.nanoTime() - start));
+  }
+
+  /**
+   * Waits until all the locators are present in the page. A navigation while waiting discards
+   * the injected script, so it is injected again in the new document until the timeout expires.
+   * @param locators the locators the page needs
+   * @param timeout maximum time to wait
+   * @return the CSS selectors that are still missing, empty if the page is ready
+   * @throws WebDriverException if the script fails for another reason than a navigation
+   */
+  List<String> awaitPresent(@NotNull LocatorSet locators, @NotNull Duration timeout) {
+    List<String> selectors = locators.getCssSelectors();
+    final long deadline = System.nanoTime() + timeout.toNanos();
+    while (true) {
+      Duration remaining = Duration.ofNanos(deadline - System.nanoTime());
+      if (remaining.isNegative()) {
+        return runScript(selectors, Duration.ZERO);
+      }
+      try {
+        return runScript(selectors, remaining);
+      } catch (WebDriverException e) {
+        if (!isDiscardedByNavigation(e)) {
+          throw e;
+        }
+        logger.debug("The readiness script was interrupted, injecting it again", e);
+        pauseBeforeRetry(e);
+      }
+    }
+  }
+
+  /**
+   * Checks whether a script failed because the page navigated while it was running, the only
+   * failure that injecting the script again in the new document can fix.
+   * @param e the error of the script
+   * @return true if the document of the script was unloaded or the element is from an old one
+   */
+  static boolean isDiscardedByNavigation(@NotNull WebDriverException e) {
+    if (e instanceof StaleElementReferenceException) {
+      return true;
+    }
+    String message = String.valueOf(e.getMessage());
+    return e instanceof JavascriptException && message.contains(DOCUMENT_UNLOADED);
+  }
+
+  /**
+   * Gives the new document a moment to start before injecting the script again.
+   * @param e the error of the script, thrown again if the thread is interrupted
+   */
+  static void pauseBeforeRetry(@NotNull WebDriverException e) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(RETRY_PAUSE_MILLIS);
+    } catch (InterruptedException interrupted) {
+      Thread.currentThread().interrupt();
+      throw e;
+    }
+  }
+
+  private DevToolsConnection getDevToolsConnection() {
+    return javascriptExecutor instanceof RemoteWebDriver
+        ? DevToolsConnection.of((RemoteWebDriver) javascriptExecutor) : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<String> runScript(List<String> selectors, Duration timeout) {
+    DevToolsConnection connection = getDevToolsConnection();
+    if (null != connection) {
+      return runScript(connection, selectors, timeout);
+    }
+    Object missing = javascriptExecutor.executeAsyncScript(AWAIT_SELECTORS_SCRIPT, selectors,
+        timeout.toMillis());
+    return null == missing ? new ArrayList<>() : (List<String>) missing;
+  }
+
+  /**
+   * Runs the script through the DevTools connection of the browser, as a promise awaited by the
+   * browser, instead of a WebDriver HTTP command.
+   */
+  private static List<String> runScript(DevToolsConnection connection, List<String> selectors,
+                                        Duration timeout) {
+    String expression;
+    try {
+      expression = "new Promise(function (done) {\n(function () {\n" + AWAIT_SELECTORS_SCRIPT
+          + "}).apply(null, [" + mapper.writeValueAsString(selectors) + ", " + timeout.toMillis()
+          + ", done]);\n})";
+    } catch (JsonProcessingException e) {
+      throw new WebDriverException("Invalid selectors " + selectors, e);
+    }
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put("expression", expression);
+    parameters.put("awaitPromise", true);
+    parameters.put("returnByValue", true);
+    JsonNode result;
+    try {
+      result = DevToolsConnection.await(connection.send("Runtime.evaluate", parameters),
+          timeout.plus(SCRIPT_TIMEOUT_MARGIN));
+    } catch (WebDriverException e) {
+      // a navigation destroys the execution context the promise was awaited in
+      if (String.valueOf(e.getMessage()).contains(CONTEXT_DESTROYED)) {
+        throw new JavascriptException(DOCUMENT_UNLOADED + " while waiting for the readiness script",
+            e);
+      }
+      throw e;
+    }
+    if (result.has("exceptionDetails")) {
+      throw new WebDriverException("The readiness script failed: "
+          + result.get("exceptionDetails"));
+    }
+    List<String> missing = new ArrayList<>();
+    result.path("result").path("value").forEach(selector -> missing.add(selector.asText()));
+    return missing;
+  }
+}
@@ -0,0 +1,260 @@
+package pageobjects.base;
+
+import driver.DevToolsConnection;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+/**
+ * Network idle, DOM stable and actionable element waits. Each wait is a single asynchronous script
+ * that checks the page where it runs, first after a few milliseconds and then backing off up to
+ * 100 milliseconds, instead of a WebDriverWait polling every 500 milliseconds over the wire. The
+ * browsers started with BrowserType.CHROME_CDP wait for the network and the DOM with the events of
+ * their DevTools connection instead.
+ */
+final class PageWaits {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(PageWaits.class);
+
+  /**
+   * Resolves with true when no request was pending nor finished during the quiet period, false on
+   * timeout. XMLHttpRequest and fetch are wrapped on the first call to count the pending requests:
+   * the requests sent before are only seen once they finish, in the resource timings.
+   * arguments[0]: quiet period in milliseconds, arguments[1]: timeout in milliseconds.
+   */
+  private static final String AWAIT_NETWORK_IDLE_SCRIPT = ""
+      + "var quiet = arguments[0];\n"
+      + "var timeout = arguments[1];\n"
+      + "var done = arguments[arguments.length - 1];\n"
+      + "var tracker = window.__pageWaitsNetwork;\n"
+      + "if (!tracker) {\n"
+      + "  tracker = window.__pageWaitsNetwork = {pending: 0, lastActivity: performance.now()};\n"
+      + "  var started = function () {\n"
+      + "    tracker.pending++;\n"
+      + "    tracker.lastActivity = performance.now();\n"
+      + "  };\n"
+      + "  var finished = function () {\n"
+      + "    tracker.pending = Math.max(0, tracker.pending - 1);\n"
+      + "    tracker.lastActivity = performance.now();\n"
+      + "  };\n"
+      + "  var send = XMLHttpRequest.prototype.send;\n"
+      + "  XMLHttpRequest.prototype.send = function () {\n"
+      + "    started();\n"
+      + "    this.addEventListener('loadend', finished);\n"
+      + "    return send.apply(this, arguments);\n"
+      + "  };\n"
+      + "  if (window.fetch) {\n"
+      + "    var fetch = window.fetch;\n"
+      + "    window.fetch = function () {\n"
+      + "      started();\n"
+      + "      return fetch.apply(this, arguments).then(\n"
+      + "          function (response) { finished(); return response; },\n"
+      + "          function (error) { finished(); throw error; });\n"
+      + "    };\n"
+      + "  }\n"
+      + "}\n"
+      + "function lastActivity() {\n"
+      + "  var last = tracker.lastActivity;\n"
+      + "  var entries = performance.getEntriesByType('resource');\n"
+      + "  for (var i = 0; i < entries.length; i++) {\n"
+      + "    last = Math.max(last, entries[i].responseEnd);\n"
+      + "  }\n"
+      + "  return last;\n"
+      + "}\n"
+      + "var start = performance.now();\n"
+      + "var delay = 2;\n"
+      + "function check() {\n"
+      + "  var now = performance.now();\n"
+      + "  if (tracker.pending === 0 && now - lastActivity() >= quiet) { done(true); return; }\n"
+      + "  if (now - start >= timeout) { done(false); return; }\n"
+      + "  setTimeout(check, delay);\n"
+      + "  delay = Math.min(delay * 2, 100);\n"
+      + "}\n"
+      + "check();\n";
+
+  /**
+   * Resolves with true when the DOM did not change during the quiet period, false on timeout.
+   * arguments[0]: quiet period in milliseconds, arguments[1]: timeout in milliseconds.
+   */
+  private static final String AWAIT_DOM_STABLE_SCRIPT = ""
+      + "var quiet = arguments[0];\n"
+      + "var timeout = arguments[1];\n"
+      + "var done = arguments[arguments.length - 1];\n"
+      + "var start = performance.now();\n"
+      + "var lastMutation = start;\n"
+      + "var observer = new MutationObserver(function () { lastMutation = performance.now(); });\n"
+      + "observer.observe(document, {childList: true, subtree: true, attributes: true,\n"
+      + "    characterData: true});\n"
+      + "function finish(stable) {\n"
+      + "  observer.disconnect();\n"
+      + "  done(stable);\n"
+      + "}\n"
+      + "function check() {\n"
+      + "  var now = performance.now();\n"
+      + "  if (now - lastMutation >= quiet) { finish(true); return; }\n"
+      + "  if (now - start >= timeout) { finish(false); return; }\n"
+      + "  setTimeout(check, Math.max(1, Math.min(quiet - (now - lastMutation),\n"
+      + "      timeout - (now - start))));\n"
+      + "}\n"
+      + "setTimeout(check, quiet);\n";
+
+  /**
+   * Resolves with [element, null] when the element is actionable: present, visible, enabled, not
+   * moving between two checks and not covered by another element at its center. Resolves with
+   * [null, reason] on timeout. An element outside of the viewport is scrolled to the center.
+   * arguments[0]: CSS selector, arguments[1]: timeout in milliseconds.
+   */
+  private static final String AWAIT_ACTIONABLE_SCRIPT = ""
+      + "var selector = arguments[0];\n"
+      + "var timeout = arguments[1];\n"
+      + "var done = arguments[arguments.length - 1];\n"
+      + "var start = performance.now();\n"
+      + "var delay = 2;\n"
+      + "var lastRect = null;\n"
+      + "function describe(element) {\n"
+      + "  return element ? element.tagName.toLowerCase()\n"
+      + "      + (element.id ? '#' + element.id : '')\n"
+      + "      + (element.className && element.className.split\n"
+      + "          ? '.' + element.className.split(' ').join('.') : '') : 'nothing';\n"
+      + "}\n"
+      + "function notActionable(element) {\n"
+      + "  if (!element) { return 'not present'; }\n"
+      + "  var style = window.getComputedStyle(element);\n"
+      + "  if (style.visibility === 'hidden' || style.display === 'none'\n"
+      + "      || parseFloat(style.opacity) === 0 || element.getClientRects().length === 0) {\n"
+      + "    return 'not visible';\n"
+      + "  }\n"
+      + "  if (element.disabled || element.getAttribute('aria-disabled') === 'true') {\n"
+      + "    return 'disabled';\n"
+      + "  }\n"
+      + "  if (style.pointerEvents === 'none') { return 'not receiving clicks'; }\n"
+      + "  var rect = element.getBoundingClientRect();\n"
+      + "  var x = rect.left + rect.width / 2;\n"
+      + "  var y = rect.top + rect.height / 2;\n"
+      + "  if (x < 0 || y < 0 || x >= window.innerWidth || y >= window.innerHeight) {\n"
+      + "    element.scrollIntoView({block: 'center', inline: 'center'});\n"
+      + "    lastRect = null;\n"
+      + "    return 'outside of the viewport';\n"
+      + "  }\n"
+      + "  var currentRect = [rect.left, rect.top, rect.width, rect.height].join(',');\n"
+      + "  if (currentRect !== lastRect) {\n"
+      + "    lastRect = currentRect;\n"
+      + "    return 'moving';\n"
+      + "  }\n"
+      + "  var hit = document.elementFromPoint(x, y);\n"
+      + "  if (hit !== element && !element.contains(hit)) {\n"
+      + "    return 'covered by ' + describe(hit);\n"
+      + "  }\n"
+      + "  return null;\n"
+      + "}\n"
+      + "function check() {\n"
+      + "  var element = document.querySelector(selector);\n"
+      + "  var reason = notActionable(element);\n"
+      + "  if (!reason) { done([element, null]); return; }\n"
+      + "  if (performance.now() - start >= timeout) { done([null, reason]); return; }\n"
+      + "  setTimeout(check, delay);\n"
+      + "  delay = Math.min(delay * 2, 100);\n"
+      + "}\n"
+      + "check();\n";
+
+  private final JavascriptExecutor javascriptExecutor;
+
+  /**
+   * Constructor of the PageWaits class.
+   * @param javascriptExecutor the driver the scripts are executed with
+   */
+  PageWaits(@NotNull JavascriptExecutor javascriptExecutor) {
+    this.javascriptExecutor = javascriptExecutor;
+  }
+
+  /**
+   * Waits until the page has no pending request for the quiet period.
+   * @param quietPeriod how long the network must stay idle
+   * @param timeout maximum time to wait
+   * @return true if the network is idle, false on timeout
+   */
+  boolean awaitNetworkIdle(@NotNull Duration quietPeriod, @NotNull Duration timeout) {
+    DevToolsConnection connection = getDevToolsConnection();
+    if (null != connection) {
+      return connection.getPageEvents().awaitNetworkIdle(quietPeriod, timeout);
+    }
+    return retryAfterNavigation(timeout, Boolean.FALSE, remaining -> (Boolean) javascriptExecutor
+        .executeAsyncScript(AWAIT_NETWORK_IDLE_SCRIPT, quietPeriod.toMillis(),
+            remaining.toMillis()));
+  }
+
+  /**
+   * Waits until the DOM of the page does not change for the quiet period.
+   * @param quietPeriod how long the DOM must stay unchanged
+   * @param timeout maximum time to wait
+   * @return true if the DOM is stable, false on timeout
+   */
+  boolean awaitDomStable(@NotNull Duration quietPeriod, @NotNull Duration timeout) {
+    DevToolsConnection connection = getDevToolsConnection();
+    if (null != connection) {
+      return connection.getPageEvents().awaitDomStable(quietPeriod, timeout);
+    }
+    return retryAfterNavigation(timeout, Boolean.FALSE, remaining -> (Boolean) javascriptExecutor
+        .executeAsyncScript(AWAIT_DOM_STABLE_SCRIPT, quietPeriod.toMillis(),
+            remaining.toMillis()));
+  }
+
+  /**
+   * Waits until the element can be clicked or typed into.
+   * @param locator the locator of the element
+   * @param timeout maximum time to wait
+   * @return the element
+   * @throws TimeoutException if the element is not actionable after the timeout, with the reason
+   */
+  @SuppressWarnings("unchecked")
+  WebElement awaitActionable(@NotNull Locator locator, @NotNull Duration timeout) {
+    List<Object> result = retryAfterNavigation(timeout, null,
+        remaining -> (List<Object>) javascriptExecutor.executeAsyncScript(
+            AWAIT_ACTIONABLE_SCRIPT, locator.getCssSelector(), remaining.toMillis()));
+    if (null == result || null == result.get(0)) {
+      throw new TimeoutException("Element " + locator + " not actionable after "
+          + timeout.toMillis() + " ms: " + (null == result ? "page navigating" : result.get(1)));
+    }
+    return (WebElement) result.get(0);
+  }
+
+  private DevToolsConnection getDevToolsConnection() {
+    return javascriptExecutor instanceof RemoteWebDriver
+        ? DevToolsConnection.of((RemoteWebDriver) javascriptExecutor) : null;
+  }
+
+  /**
+   * Runs a wait script again when a navigation discards it, until the timeout expires. The other
+   * errors of the script are thrown.
+   */
+  private static <T> T retryAfterNavigation(Duration timeout, T timedOut,
+                                            Function<Duration, T> script) {
+    final long deadline = System.nanoTime() + timeout.toNanos();
+    while (true) {
+      Duration remaining = Duration.ofNanos(deadline - System.nanoTime());
+      if (remaining.isNegative()) {
+        return timedOut;
+      }
+      try {
+        return script.apply(remaining);
+      } catch (WebDriverException e) {
+        if (!PageReadiness.isDiscardedByNavigation(e)) {
+          throw e;
+        }
+        logger.debug("The wait script was interrupted, injecting it again", e);
+        PageReadiness.pauseBeforeRetry(e);
+      }
+    }
+  }
+}
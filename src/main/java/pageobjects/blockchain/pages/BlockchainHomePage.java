@@ -1,19 +1,23 @@
 package pageobjects.blockchain.pages;
 
-import java.time.Duration;
-import java.time.Instant;
-import org.openqa.selenium.By;
-import org.openqa.selenium.NoSuchElementException;
 import pageobjects.base.AbstractPage;
-import utils.TestReporter;
+import pageobjects.base.Locator;
+import pageobjects.base.LocatorLookup;
+import pageobjects.base.LocatorSet;
 
 public class BlockchainHomePage extends AbstractPage {
 
   // Selectors
-  private static final By homeLinkBy = By.cssSelector("[data-e2e='homeLink']");
-  private static final By totalBalanceBy = By.cssSelector("[data-e2e='topBalanceTotal']");
-  private static final By dashboardLinkBy = By.cssSelector("[data-e2e='dashboardLink']");
-  private static final By homePageBy = By.cssSelector("[data-e2e='page-home']");
+  private static final Locator homeLinkBy = Locator.css("[data-e2e='homeLink']");
+  private static final Locator totalBalanceBy = Locator.css("[data-e2e='topBalanceTotal']");
+  private static final Locator dashboardLinkBy = Locator.css("[data-e2e='dashboardLink']");
+  private static final Locator homePageBy = Locator.css("[data-e2e='page-home']");
+
+  /**
+   * Elements that must be present to consider the page loaded.
+   */
+  private static final LocatorSet requiredLocators =
+      LocatorSet.of(homeLinkBy, totalBalanceBy, dashboardLinkBy, homePageBy);
 
   /**
    * Container of the Blockchain Home page.
@@ -30,35 +34,18 @@ public class BlockchainHomePage extends AbstractPage {
    */
   public boolean isHomePage() {
     logger.debug("Validating if HomePage is displayed:");
-    try {
-      return driver.findElement(homePageBy).isDisplayed();
-    } catch (NoSuchElementException e) {
-      logger.debug("Home Page was not found ", e);
-      return false;
-    }
+    LocatorLookup lookup = findAll(requiredLocators);
+    logger.debug("Home Page elements visibility: {}", lookup.getVisibility());
+    return lookup.isVisible(homePageBy);
   }
 
   @Override
-  protected void isLoaded() throws Error {
-    final Instant start = Instant.now();
-    try {
-      driver.findElement(homeLinkBy);
-      logger.debug("Home link is displayed");
-      driver.findElement(totalBalanceBy);
-      logger.debug("Total Balance is displayed");
-      driver.findElement(dashboardLinkBy);
-      logger.debug("Dashboard link is displayed");
-      driver.findElement(homePageBy);
-      logger.debug("Page Home is displayed");
-
-    } catch (Exception e) {
-      throwNotLoadedException("The Blockchain home page was not loaded correctly", e);
-    }
-    final Instant finish = Instant.now();
-    final long timeElapsed = Duration.between(start, finish).toMillis();
-    TestReporter.addScreenshotToReport("The Blockchain Home page was loaded correctly in "
-        + timeElapsed + " milliseconds.");
-
+  protected LocatorSet getRequiredLocators() {
+    return requiredLocators;
   }
 
+  @Override
+  protected String getPageName() {
+    return "Blockchain Home";
+  }
 }
@@ -1,29 +1,40 @@
 package pageobjects.blockchain.pages;
 
 import driver.DriverBase;
+import driver.SessionSnapshot;
+import driver.SessionSnapshotCache;
 import environment.EnvironmentConfig;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.time.Duration;
-import java.time.Instant;
-import org.openqa.selenium.By;
-import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
+import org.openqa.selenium.WebDriverException;
 import pageobjects.base.AbstractPage;
+import pageobjects.base.Form;
+import pageobjects.base.Locator;
+import pageobjects.base.LocatorSet;
+import utils.TestAccount;
 import utils.TestReporter;
 
 public class BlockchainLoginPage extends AbstractPage {
 
   private static final int TIMEOUT_TO_CLICKABLE = 5;
 
+  private static final int TIMEOUT_TO_RESTORE_SESSION = 10;
+
   // Selectors
-  private static final By blockChainImageBy = By.cssSelector("a[href]>img");
-  private static final By walletIdInputBy = By.cssSelector("input[data-e2e='loginGuid']");
-  private static final By passwordInputBy = By.cssSelector("input[data-e2e='loginPassword']");
-  private static final By submitButtonBy = By.cssSelector("button[data-e2e='loginButton']");
-  private static final By signUpLinkBy = By.cssSelector("a[data-e2e='signupLink']");
+  private static final Locator blockChainImageBy = Locator.css("a[href]>img");
+  private static final Locator walletIdInputBy = Locator.css("input[data-e2e='loginGuid']");
+  private static final Locator passwordInputBy = Locator.css("input[data-e2e='loginPassword']");
+  private static final Locator submitButtonBy = Locator.css("button[data-e2e='loginButton']");
+  private static final Locator signUpLinkBy = Locator.css("a[data-e2e='signupLink']");
 
-  private URL blockchainLoginPageUrl;
+  /**
+   * Elements that must be present to consider the page loaded.
+   */
+  private static final LocatorSet requiredLocators = LocatorSet.of(blockChainImageBy,
+      walletIdInputBy, passwordInputBy, submitButtonBy, signUpLinkBy);
+
+  private final URL blockchainLoginPageUrl;
 
   /**
    * Constructor of the BlockChainLoginPage class.
@@ -31,13 +42,7 @@ public class BlockchainLoginPage extends AbstractPage {
   public BlockchainLoginPage() {
     super();
     logger.debug("Initializing Blockchain login Page");
-    try {
-      blockchainLoginPageUrl = new URL(EnvironmentConfig.getBlockchainLoginUrl());
-    } catch (MalformedURLException e) {
-      logger.error("The URL format '{}' is not correct.",
-          EnvironmentConfig.getBlockchainLoginUrl(), e);
-      throwNotLoadedException("The blockchain login page could not be opened", e);
-    }
+    blockchainLoginPageUrl = EnvironmentConfig.getBlockchainLoginUrl();
     logger.debug("Set blockchain login page url to: '{}'", blockchainLoginPageUrl);
   }
 
@@ -49,7 +54,7 @@ public class BlockchainLoginPage extends AbstractPage {
    */
   public BlockchainLoginPage enterWalletId(String walletId) {
     TestReporter.addInfoToReport("Enter walletId: " + walletId);
-    driver.findElement(walletIdInputBy).sendKeys(walletId);
+    type(walletIdInputBy, walletId);
     return this;
   }
 
@@ -61,7 +66,23 @@ public class BlockchainLoginPage extends AbstractPage {
    */
   public BlockchainLoginPage enterPassword(String password) {
     TestReporter.addInfoToReport("Enter password: " + password);
-    driver.findElement(passwordInputBy).sendKeys(password);
+    type(passwordInputBy, password);
+    return this;
+  }
+
+  /**
+   * Enters the wallet id and the password with a single script. Tests of the login form itself
+   * should type them with enterWalletId and enterPassword instead.
+   *
+   * @param walletId String
+   * @param password String
+   * @return BlockchainLoginPage
+   */
+  public BlockchainLoginPage enterCredentials(String walletId, String password) {
+    TestReporter.addInfoToReport("Enter walletId: " + walletId + " and password: " + password);
+    fill(new Form()
+        .set(walletIdInputBy, walletId)
+        .set(passwordInputBy, password));
     return this;
   }
 
@@ -72,9 +93,7 @@ public class BlockchainLoginPage extends AbstractPage {
    */
   public BlockchainHomePage clickLoginButton() {
     TestReporter.addInfoToReport("Click on Log In button");
-    WebDriverWait wait = new WebDriverWait(DriverBase.getDriver(),
-        TIMEOUT_TO_CLICKABLE);
-    wait.until(ExpectedConditions.elementToBeClickable(submitButtonBy)).click();
+    click(waitUntilActionable(submitButtonBy, Duration.ofSeconds(TIMEOUT_TO_CLICKABLE)));
     BlockchainHomePage blockchainHomePage = new BlockchainHomePage();
     blockchainHomePage.get();
     return blockchainHomePage;
@@ -82,6 +101,58 @@ public class BlockchainLoginPage extends AbstractPage {
 
 
 
+  /**
+   * Logs in with the account and opens the home page. When a previous test already logged in with
+   * the same account, its session is restored in the browser instead of going through the login
+   * page. If the application rejects the restored session, the login is done through the page.
+   *
+   * @param account TestAccount
+   * @return BlockchainHomePage
+   */
+  public BlockchainHomePage loginAs(TestAccount account) {
+    SessionSnapshot snapshot = SessionSnapshotCache.get(account.walletId());
+    if (null != snapshot) {
+      TestReporter.addInfoToReport("Restore the session of wallet: " + account.walletId());
+      BlockchainHomePage blockchainHomePage = timed("restore", () -> restoreSession(snapshot));
+      if (null != blockchainHomePage) {
+        return blockchainHomePage;
+      }
+      SessionSnapshotCache.invalidate(account.walletId(), snapshot);
+      SessionSnapshot.clear(DriverBase.getDriver());
+    }
+    get();
+    BlockchainHomePage blockchainHomePage = enterCredentials(account.walletId(),
+        account.password())
+        .clickLoginButton();
+    try {
+      SessionSnapshotCache.put(account.walletId(), timed("capture", this::captureSession));
+    } catch (WebDriverException e) {
+      logger.warn("Unable to take a snapshot of the session of {}", account.walletId(), e);
+    }
+    return blockchainHomePage;
+  }
+
+  private BlockchainHomePage restoreSession(SessionSnapshot snapshot) {
+    try {
+      snapshot.restore(DriverBase.getDriver());
+      BlockchainHomePage blockchainHomePage = new BlockchainHomePage();
+      if (blockchainHomePage.waitUntilLoaded(Duration.ofSeconds(TIMEOUT_TO_RESTORE_SESSION))) {
+        return blockchainHomePage;
+      }
+    } catch (WebDriverException e) {
+      logger.warn("Unable to restore the session snapshot", e);
+    }
+    return null;
+  }
+
+  private SessionSnapshot captureSession() {
+    try {
+      return SessionSnapshot.capture(DriverBase.getDriver());
+    } catch (MalformedURLException e) {
+      throw new WebDriverException("The home page has no URL", e);
+    }
+  }
+
   /**
    * load() is called when BlockchainLoginPage.get() is called. Opens the login page defined by the
    * configuration selected.
@@ -93,28 +164,12 @@ public class BlockchainLoginPage extends AbstractPage {
   }
 
   @Override
-  protected void isLoaded() throws Error {
-    final Instant start = Instant.now();
-    try {
-      driver.findElement(blockChainImageBy);
-      logger.debug("Blockchain image is displayed");
-      driver.findElement(walletIdInputBy);
-      logger.debug("Wallet ID input field is displayed");
-      driver.findElement(passwordInputBy);
-      logger.debug("Password input field is displayed");
-      driver.findElement(submitButtonBy);
-      logger.debug("Submit button is displayed");
-      driver.findElement(signUpLinkBy);
-      logger.debug("Sign Up link is displayed");
-
-
-    } catch (Exception e) {
-      throwNotLoadedException("The Blockchain login page was not loaded correctly", e);
-    }
-    final Instant finish = Instant.now();
-    final long timeElapsed = Duration.between(start, finish).toMillis();
-    TestReporter.addScreenshotToReport("The Blockchain Login page was loaded correctly in "
-        + timeElapsed + " milliseconds.");
+  protected LocatorSet getRequiredLocators() {
+    return requiredLocators;
+  }
 
+  @Override
+  protected String getPageName() {
+    return "Blockchain Login";
   }
 }
@@ -0,0 +1,124 @@
+package proxy;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Metadata of a response stored by the ProxyCache: the status, the headers and how long the
+ * response stays fresh. The body is stored next to it, in its own file.
+ */
+public final class CachedResponse {
+
+  @JsonProperty("url")
+  private String url;
+
+  @JsonProperty("status")
+  private int status;
+
+  @JsonProperty("headers")
+  private Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+  @JsonProperty("storedAtMillis")
+  private long storedAtMillis;
+
+  @JsonProperty("freshUntilMillis")
+  private long freshUntilMillis;
+
+  @JsonProperty("size")
+  private long size;
+
+  /**
+   * Default constructor, used to read the metadata files.
+   */
+  public CachedResponse() {
+
+  }
+
+  /**
+   * Constructor of the CachedResponse class.
+   * @param url the URL of the request
+   * @param status the status code of the response
+   * @param headers the end to end headers of the response
+   * @param freshUntilMillis time until which the response can be served without revalidation
+   * @param size the size of the body
+   */
+  public CachedResponse(@NotNull String url, int status, @NotNull Map<String, List<String>> headers,
+                        long freshUntilMillis, long size) {
+    this.url = url;
+    this.status = status;
+    headers.forEach((name, values) -> this.headers.put(name, new ArrayList<>(values)));
+    this.storedAtMillis = System.currentTimeMillis();
+    this.freshUntilMillis = freshUntilMillis;
+    this.size = size;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public Map<String, List<String>> getHeaders() {
+    return headers;
+  }
+
+  /**
+   * Sets the headers read from a metadata file, keeping the names case insensitive.
+   */
+  @JsonProperty("headers")
+  private void setHeaders(Map<String, List<String>> headers) {
+    this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    this.headers.putAll(headers);
+  }
+
+  public long getStoredAtMillis() {
+    return storedAtMillis;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Gets the first value of a header.
+   * @param name the name of the header, in any case
+   * @return the value, or null if the response does not have the header
+   */
+  @Nullable
+  public String getHeader(@NotNull String name) {
+    List<String> values = headers.get(name);
+    return null == values || values.isEmpty() ? null : values.get(0);
+  }
+
+  /**
+   * Checks if the response can be served without asking the server.
+   * @return boolean
+   */
+  public boolean isFresh() {
+    return System.currentTimeMillis() < freshUntilMillis;
+  }
+
+  /**
+   * Checks if the server can tell whether the response changed, with an ETag or a Last-Modified
+   * date.
+   * @return boolean
+   */
+  public boolean hasValidator() {
+    return null != getHeader("ETag") || null != getHeader("Last-Modified");
+  }
+
+  /**
+   * Extends the freshness of the response after the server confirmed it did not change.
+   * @param freshUntilMillis the new time until which the response is fresh
+   */
+  void refresh(long freshUntilMillis) {
+    this.freshUntilMillis = freshUntilMillis;
+  }
+}
@@ -0,0 +1,684 @@
+package proxy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openqa.selenium.Proxy;
+
+/**
+ * HTTP forward proxy, started once per suite, that keeps the responses of the sites under test in
+ * a ProxyCache shared by all the browsers and kept between runs. The Cache-Control, Expires and
+ * Last-Modified headers decide how long a response is fresh, and stale responses are revalidated
+ * with their ETag or Last-Modified date. In pin mode the stored responses are served forever, so
+ * every run gets the same JavaScript bundles.
+ *
+ * <p>HTTPS requests are decrypted with a self-signed certificate (see ProxyCertificate) for the
+ * hosts matching the proxy hosts, and tunneled untouched for the other hosts. WebSocket upgrades
+ * of the decrypted hosts are not supported.
+ */
+public final class CachingProxy {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(CachingProxy.class);
+
+  private static final int DEFAULT_CACHE_SIZE_MB = 512;
+
+  private static final int SOCKET_TIMEOUT_MILLIS = 60_000;
+
+  private static final int MAX_LINE_LENGTH = 65_536;
+
+  private static final long MAX_HEURISTIC_FRESHNESS_MILLIS = 24 * 60 * 60 * 1000L;
+
+  /**
+   * Headers that only apply to one connection, and are never forwarded nor cached.
+   */
+  private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList(
+      "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "proxy-connection",
+      "te", "trailer", "transfer-encoding", "upgrade"));
+
+  /**
+   * Headers the HttpClient sets by itself.
+   */
+  private static final Set<String> CLIENT_HEADERS = new HashSet<>(Arrays.asList(
+      "content-length", "date", "expect", "from", "host", "via", "warning"));
+
+  private static final Set<String> CONDITIONAL_HEADERS = new HashSet<>(Arrays.asList(
+      "if-none-match", "if-modified-since"));
+
+  private final ProxyCache cache;
+
+  private final boolean pinned;
+
+  private final SSLContext sslContext;
+
+  private final List<Pattern> proxyHosts;
+
+  private final HttpClient httpClient = HttpClient.newBuilder()
+      .followRedirects(HttpClient.Redirect.NEVER)
+      .connectTimeout(Duration.ofSeconds(30))
+      .build();
+
+  private final AtomicInteger connectionCount = new AtomicInteger();
+
+  private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "caching-proxy-" + connectionCount.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final AtomicLong hitCount = new AtomicLong();
+
+  private final AtomicLong missCount = new AtomicLong();
+
+  private final AtomicLong revalidationCount = new AtomicLong();
+
+  private final AtomicLong storeCount = new AtomicLong();
+
+  private final AtomicLong bytesFromCache = new AtomicLong();
+
+  private final AtomicLong bytesFromNetwork = new AtomicLong();
+
+  private ServerSocket serverSocket;
+
+  private Proxy seleniumProxy;
+
+  /**
+   * Constructor of the CachingProxy class.
+   * @param cache the cache of the responses
+   * @param pinned true to serve the stored responses without checking their freshness
+   * @param sslContext the TLS context used to decrypt the HTTPS requests, null to tunnel them
+   * @param proxyHosts the host patterns, with * as wildcard, whose HTTPS requests are decrypted
+   */
+  public CachingProxy(@NotNull ProxyCache cache, boolean pinned, @Nullable SSLContext sslContext,
+                      @NotNull List<String> proxyHosts) {
+    this.cache = cache;
+    this.pinned = pinned;
+    this.sslContext = sslContext;
+    this.proxyHosts = proxyHosts.stream()
+        .map(host -> Pattern.compile(Arrays.stream(host.split("\\*", -1)).map(Pattern::quote)
+            .collect(Collectors.joining(".*")), Pattern.CASE_INSENSITIVE))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Creates a proxy with the settings of the command line arguments: -DproxyCacheDir
+   * (.proxy-cache), -DproxyCacheSizeMb (512), -DproxyPin (false), -DproxyHttps (true) and
+   * -DproxyHosts, comma separated (* by default).
+   * @return CachingProxy
+   * @throws IOException if the cache or the certificate cannot be created
+   */
+  public static CachingProxy fromSystemProperties() throws IOException {
+    Path directory = Paths.get(System.getProperty("proxyCacheDir",
+        Paths.get(System.getProperty("user.dir"), ".proxy-cache").toString()));
+    long maxBytes = Integer.getInteger("proxyCacheSizeMb", DEFAULT_CACHE_SIZE_MB) * 1024L * 1024L;
+    SSLContext sslContext = Boolean.parseBoolean(System.getProperty("proxyHttps", "true"))
+        ? ProxyCertificate.createSslContext(directory) : null;
+    List<String> proxyHosts = Arrays.stream(System.getProperty("proxyHosts", "*").split(","))
+        .map(String::trim).filter(host -> !host.isEmpty()).collect(Collectors.toList());
+    return new CachingProxy(new ProxyCache(directory.resolve("responses"), maxBytes),
+        Boolean.getBoolean("proxyPin"), sslContext, proxyHosts);
+  }
+
+  /**
+   * Starts accepting connections on the loopback interface.
+   * @param port the port of the proxy, 0 to use any free port
+   * @throws IOException if the port is not available
+   */
+  public synchronized void start(int port) throws IOException {
+    serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+    Thread acceptThread = new Thread(this::acceptConnections, "caching-proxy");
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+    String address = "localhost:" + serverSocket.getLocalPort();
+    seleniumProxy = new Proxy();
+    seleniumProxy.setHttpProxy(address);
+    seleniumProxy.setSslProxy(address);
+    logger.info("Caching proxy listening on port {}, pin mode: {}, HTTPS caching: {}",
+        serverSocket.getLocalPort(), pinned, isDecryptingHttps());
+  }
+
+  /**
+   * Stops the proxy, and logs and writes its metrics to the given directory.
+   * @param metricsDirectory the directory of the proxy-cache.json metrics file
+   */
+  public synchronized void stop(@NotNull Path metricsDirectory) {
+    try {
+      if (null != serverSocket) {
+        serverSocket.close();
+      }
+    } catch (IOException e) {
+      logger.warn("Unable to close the caching proxy", e);
+    }
+    connections.shutdownNow();
+    Map<String, Object> metrics = getMetrics();
+    logger.info("Caching proxy metrics: {}", metrics);
+    try {
+      Files.createDirectories(metricsDirectory);
+      ObjectMapper mapper = new ObjectMapper();
+      ObjectNode root = mapper.valueToTree(metrics);
+      mapper.writerWithDefaultPrettyPrinter()
+          .writeValue(metricsDirectory.resolve("proxy-cache.json").toFile(), root);
+    } catch (IOException e) {
+      logger.error("Unable to write the caching proxy metrics to {}", metricsDirectory, e);
+    }
+  }
+
+  /**
+   * Gets the Selenium proxy settings that send the HTTP and HTTPS requests of a browser through
+   * this proxy. Always the same instance, so the session keys of the pool stay equal.
+   * @return Proxy
+   */
+  public synchronized Proxy getSeleniumProxy() {
+    return seleniumProxy;
+  }
+
+  /**
+   * Checks if HTTPS requests are decrypted, in which case the browsers must accept the
+   * self-signed certificate of the proxy.
+   * @return boolean
+   */
+  public boolean isDecryptingHttps() {
+    return null != sslContext;
+  }
+
+  /**
+   * Gets the hits, misses, revalidations and bytes served by the proxy so far.
+   * @return Map of metric name to value
+   */
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    long hits = hitCount.get();
+    long misses = missCount.get();
+    long revalidations = revalidationCount.get();
+    metrics.put("hits", hits);
+    metrics.put("misses", misses);
+    metrics.put("revalidations", revalidations);
+    metrics.put("hitRatio", hits + misses + revalidations == 0 ? 0.0
+        : (double) (hits + revalidations) / (hits + misses + revalidations));
+    metrics.put("stores", storeCount.get());
+    metrics.put("evictions", cache.getEvictionCount());
+    metrics.put("bytesFromCache", bytesFromCache.get());
+    metrics.put("bytesFromNetwork", bytesFromNetwork.get());
+    metrics.put("cachedResponses", cache.size());
+    metrics.put("cachedBytes", cache.getTotalBytes());
+    return metrics;
+  }
+
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        connections.execute(() -> handleConnection(socket));
+      } catch (SocketException e) {
+        logger.debug("Caching proxy closed");
+      } catch (IOException | RejectedExecutionException e) {
+        logger.warn("Unable to accept a proxy connection", e);
+      }
+    }
+  }
+
+  private void handleConnection(Socket socket) {
+    try (Socket client = socket) {
+      client.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+      InputStream input = new BufferedInputStream(client.getInputStream());
+      ProxyRequest request = ProxyRequest.read(input, null);
+      if (null == request) {
+        return;
+      }
+      if ("CONNECT".equals(request.method)) {
+        connect(client, input, request.target);
+      } else {
+        serveRequests(input, new BufferedOutputStream(client.getOutputStream()), request, null);
+      }
+    } catch (IOException e) {
+      logger.debug("Proxy connection closed: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Answers a CONNECT request: decrypts the connection if the host is cached, or tunnels it.
+   */
+  private void connect(Socket client, InputStream input, String authority) throws IOException {
+    int separator = authority.lastIndexOf(':');
+    String host = separator < 0 ? authority : authority.substring(0, separator);
+    int port = separator < 0 ? 443 : Integer.parseInt(authority.substring(separator + 1));
+    OutputStream clientOutput = client.getOutputStream();
+    clientOutput.write("HTTP/1.1 200 Connection Established\r\n\r\n"
+        .getBytes(StandardCharsets.ISO_8859_1));
+    clientOutput.flush();
+
+    if (null != sslContext && proxyHosts.stream().anyMatch(p -> p.matcher(host).matches())) {
+      try (SSLSocket sslSocket = (SSLSocket) sslContext.getSocketFactory()
+          .createSocket(client, null, true)) {
+        sslSocket.setUseClientMode(false);
+        sslSocket.startHandshake();
+        InputStream sslInput = new BufferedInputStream(sslSocket.getInputStream());
+        String origin = "https://" + host + (port == 443 ? "" : ":" + port);
+        ProxyRequest request = ProxyRequest.read(sslInput, origin);
+        if (null != request) {
+          serveRequests(sslInput, new BufferedOutputStream(sslSocket.getOutputStream()), request,
+              origin);
+        }
+      }
+      return;
+    }
+    try (Socket upstream = new Socket(host, port)) {
+      upstream.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+      connections.execute(() -> pipe(input, upstream));
+      upstream.getInputStream().transferTo(clientOutput);
+    }
+  }
+
+  private static void pipe(InputStream input, Socket upstream) {
+    try {
+      input.transferTo(upstream.getOutputStream());
+      upstream.shutdownOutput();
+    } catch (IOException e) {
+      logger.trace("Tunnel closed: {}", e.getMessage());
+    }
+  }
+
+  private void serveRequests(InputStream input, OutputStream output, ProxyRequest firstRequest,
+                             String origin) throws IOException {
+    ProxyRequest request = firstRequest;
+    while (null != request) {
+      serve(request, output);
+      if (request.closesConnection()) {
+        return;
+      }
+      request = ProxyRequest.read(input, origin);
+    }
+  }
+
+  private void serve(ProxyRequest request, OutputStream output) throws IOException {
+    if (null != request.getHeader("Upgrade")) {
+      writeResponse(output, request, 502, new TreeMap<>(),
+          "Upgrades are not supported by the caching proxy".getBytes(StandardCharsets.UTF_8));
+      return;
+    }
+    String key = request.url + "\n" + nullToEmpty(request.getHeader("Accept-Encoding"));
+    boolean cacheable = "GET".equals(request.method) && null == request.getHeader("Authorization");
+    CachedResponse cached = cacheable ? cache.get(key) : null;
+    if (null != cached && (pinned || cached.isFresh())) {
+      byte[] body = cache.getBody(key);
+      if (null != body) {
+        hitCount.incrementAndGet();
+        bytesFromCache.addAndGet(body.length);
+        writeResponse(output, request, cached.getStatus(), cached.getHeaders(), body);
+        return;
+      }
+    }
+
+    HttpResponse<byte[]> response;
+    try {
+      response = send(request, cached);
+    } catch (IOException | IllegalArgumentException e) {
+      logger.debug("Proxy request to {} failed", request.url, e);
+      writeResponse(output, request, 502, new TreeMap<>(),
+          String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+      return;
+    }
+    Map<String, List<String>> headers = getEndToEndHeaders(response.headers().map());
+    if (response.statusCode() == 304 && null != cached && !request.isConditional()) {
+      byte[] body = cache.getBody(key);
+      if (null != body) {
+        revalidationCount.incrementAndGet();
+        bytesFromCache.addAndGet(body.length);
+        cached.refresh(getFreshUntilMillis(headers));
+        cache.update(key, cached);
+        writeResponse(output, request, cached.getStatus(), cached.getHeaders(), body);
+        return;
+      }
+      response = send(request, null);
+      headers = getEndToEndHeaders(response.headers().map());
+    }
+
+    byte[] body = response.body();
+    if (cacheable) {
+      missCount.incrementAndGet();
+    }
+    bytesFromNetwork.addAndGet(body.length);
+    if (cacheable && isStorable(response.statusCode(), headers)) {
+      cache.put(key, new CachedResponse(request.url, response.statusCode(), headers,
+          getFreshUntilMillis(headers), body.length), body);
+      storeCount.incrementAndGet();
+    }
+    writeResponse(output, request, response.statusCode(), headers, body);
+  }
+
+  /**
+   * Sends the request to the server, as a conditional request when a stale response is stored.
+   */
+  private HttpResponse<byte[]> send(ProxyRequest request, @Nullable CachedResponse stale)
+      throws IOException {
+    HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.url))
+        .timeout(Duration.ofMillis(SOCKET_TIMEOUT_MILLIS))
+        .method(request.method, request.body.length == 0 ? HttpRequest.BodyPublishers.noBody()
+            : HttpRequest.BodyPublishers.ofByteArray(request.body));
+    boolean revalidating = null != stale && stale.hasValidator() && !request.isConditional();
+    request.headers.forEach((name, values) -> {
+      String lowerCaseName = name.toLowerCase(Locale.ROOT);
+      if (HOP_BY_HOP_HEADERS.contains(lowerCaseName) || CLIENT_HEADERS.contains(lowerCaseName)) {
+        return;
+      }
+      values.forEach(value -> {
+        try {
+          builder.header(name, value);
+        } catch (IllegalArgumentException e) {
+          logger.trace("Header {} not forwarded", name);
+        }
+      });
+    });
+    if (revalidating) {
+      if (null != stale.getHeader("ETag")) {
+        builder.header("If-None-Match", stale.getHeader("ETag"));
+      }
+      if (null != stale.getHeader("Last-Modified")) {
+        builder.header("If-Modified-Since", stale.getHeader("Last-Modified"));
+      }
+    }
+    try {
+      return httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted sending the request to " + request.url, e);
+    }
+  }
+
+  /**
+   * Checks if a response can be stored: a 200 response that is not private to a user and that
+   * can be served or revalidated later. In pin mode every such response is stored. The cache key
+   * only has the URL and the Accept-Encoding header, so the responses that vary on other request
+   * headers are not stored.
+   */
+  private boolean isStorable(int status, Map<String, List<String>> headers) {
+    if (status != 200 || headers.containsKey("Set-Cookie") || !variesOnlyOnEncoding(headers)) {
+      return false;
+    }
+    Map<String, String> cacheControl = getCacheControl(headers);
+    if (cacheControl.containsKey("no-store") || cacheControl.containsKey("private")) {
+      return false;
+    }
+    return pinned || getFreshUntilMillis(headers) > System.currentTimeMillis()
+        || null != getHeader(headers, "ETag") || null != getHeader(headers, "Last-Modified");
+  }
+
+  private static boolean variesOnlyOnEncoding(Map<String, List<String>> headers) {
+    List<String> values = headers.get("Vary");
+    return null == values || values.stream().flatMap(value -> Arrays.stream(value.split(",")))
+        .map(String::trim)
+        .allMatch(field -> field.isEmpty() || "Accept-Encoding".equalsIgnoreCase(field));
+  }
+
+  /**
+   * Computes until when a response is fresh: from its max-age, its Expires date or, without
+   * them, 10% of the time since it was last modified.
+   */
+  private static long getFreshUntilMillis(Map<String, List<String>> headers) {
+    final long now = System.currentTimeMillis();
+    Map<String, String> cacheControl = getCacheControl(headers);
+    if (cacheControl.containsKey("no-cache")) {
+      return now;
+    }
+    String maxAge = cacheControl.getOrDefault("s-maxage", cacheControl.get("max-age"));
+    if (null != maxAge) {
+      try {
+        return now + Long.parseLong(maxAge) * 1000;
+      } catch (NumberFormatException e) {
+        return now;
+      }
+    }
+    long date = parseDate(getHeader(headers, "Date"), now);
+    long expires = parseDate(getHeader(headers, "Expires"), -1);
+    if (expires >= 0) {
+      return now + expires - date;
+    }
+    long lastModified = parseDate(getHeader(headers, "Last-Modified"), -1);
+    if (lastModified >= 0 && lastModified < date) {
+      return now + Math.min((date - lastModified) / 10, MAX_HEURISTIC_FRESHNESS_MILLIS);
+    }
+    return now;
+  }
+
+  private static Map<String, String> getCacheControl(Map<String, List<String>> headers) {
+    Map<String, String> directives = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    List<String> values = headers.get("Cache-Control");
+    if (null == values) {
+      return directives;
+    }
+    for (String value : values) {
+      for (String directive : value.split(",")) {
+        String[] nameAndValue = directive.trim().split("=", 2);
+        directives.put(nameAndValue[0].trim(),
+            nameAndValue.length > 1 ? nameAndValue[1].trim().replace("\"", "") : "");
+      }
+    }
+    return directives;
+  }
+
+  private static long parseDate(@Nullable String value, long defaultValue) {
+    if (null == value) {
+      return defaultValue;
+    }
+    try {
+      return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+          .toEpochMilli();
+    } catch (DateTimeParseException e) {
+      return defaultValue;
+    }
+  }
+
+  private static Map<String, List<String>> getEndToEndHeaders(Map<String, List<String>> headers) {
+    Map<String, List<String>> endToEndHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    headers.forEach((name, values) -> {
+      String lowerCaseName = name.toLowerCase(Locale.ROOT);
+      if (!name.startsWith(":") && !HOP_BY_HOP_HEADERS.contains(lowerCaseName)) {
+        endToEndHeaders.put(name, new ArrayList<>(values));
+      }
+    });
+    return endToEndHeaders;
+  }
+
+  private static String getHeader(Map<String, List<String>> headers, String name) {
+    List<String> values = headers.get(name);
+    return null == values || values.isEmpty() ? null : values.get(0);
+  }
+
+  private static void writeResponse(OutputStream output, ProxyRequest request, int status,
+                                    Map<String, List<String>> headers, byte[] body)
+      throws IOException {
+    boolean headRequest = "HEAD".equals(request.method);
+    boolean hasBody = !headRequest && status != 204 && status != 304 && status >= 200;
+    StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(" \r\n");
+    headers.forEach((name, values) -> {
+      if (!"content-length".equalsIgnoreCase(name) || headRequest) {
+        values.forEach(value -> head.append(name).append(": ").append(value).append("\r\n"));
+      }
+    });
+    if (hasBody) {
+      head.append("Content-Length: ").append(body.length).append("\r\n");
+    }
+    if (request.closesConnection()) {
+      head.append("Connection: close\r\n");
+    }
+    head.append("\r\n");
+    output.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+    if (hasBody) {
+      output.write(body);
+    }
+    output.flush();
+  }
+
+  private static String nullToEmpty(String value) {
+    return null == value ? "" : value;
+  }
+
+  /**
+   * An HTTP/1.1 request read from a browser connection.
+   */
+  private static final class ProxyRequest {
+
+    private final String method;
+
+    private final String target;
+
+    private final String url;
+
+    private final String version;
+
+    private final Map<String, List<String>> headers;
+
+    private final byte[] body;
+
+    private ProxyRequest(String method, String target, String url, String version,
+                         Map<String, List<String>> headers, byte[] body) {
+      this.method = method;
+      this.target = target;
+      this.url = url;
+      this.version = version;
+      this.headers = headers;
+      this.body = body;
+    }
+
+    /**
+     * Reads the next request of a connection.
+     * @param input the connection
+     * @param origin the scheme and host of a decrypted HTTPS connection, null for a plain proxy
+     *     connection, whose requests have absolute URLs
+     * @return the request, or null if the browser closed the connection
+     */
+    @Nullable
+    static ProxyRequest read(InputStream input, @Nullable String origin) throws IOException {
+      String requestLine = readLine(input);
+      while (null != requestLine && requestLine.isEmpty()) {
+        requestLine = readLine(input);
+      }
+      if (null == requestLine) {
+        return null;
+      }
+      String[] parts = requestLine.split(" ");
+      if (parts.length != 3) {
+        throw new IOException("Invalid request line: " + requestLine);
+      }
+      Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+      for (String line = readLine(input); null != line && !line.isEmpty();
+           line = readLine(input)) {
+        int separator = line.indexOf(':');
+        if (separator > 0) {
+          headers.computeIfAbsent(line.substring(0, separator).trim(), name -> new ArrayList<>())
+              .add(line.substring(separator + 1).trim());
+        }
+      }
+      byte[] body = new byte[0];
+      String transferEncoding = CachingProxy.getHeader(headers, "Transfer-Encoding");
+      String contentLength = CachingProxy.getHeader(headers, "Content-Length");
+      if (null != transferEncoding && transferEncoding.toLowerCase(Locale.ROOT)
+          .contains("chunked")) {
+        body = readChunkedBody(input);
+      } else if (null != contentLength) {
+        body = input.readNBytes(Integer.parseInt(contentLength.trim()));
+      }
+      String url = null == origin ? parts[1] : origin + parts[1];
+      return new ProxyRequest(parts[0], parts[1], url, parts[2], headers, body);
+    }
+
+    String getHeader(String name) {
+      return CachingProxy.getHeader(headers, name);
+    }
+
+    boolean isConditional() {
+      return headers.keySet().stream()
+          .anyMatch(name -> CONDITIONAL_HEADERS.contains(name.toLowerCase(Locale.ROOT)));
+    }
+
+    boolean closesConnection() {
+      String connection = getHeader("Connection");
+      return "HTTP/1.0".equals(version) ? !"keep-alive".equalsIgnoreCase(connection)
+          : "close".equalsIgnoreCase(connection);
+    }
+
+    private static byte[] readChunkedBody(InputStream input) throws IOException {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      String sizeLine = readLine(input);
+      while (null != sizeLine) {
+        int size = Integer.parseInt(sizeLine.split(";")[0].trim(), 16);
+        if (size == 0) {
+          // trailers
+          for (String line = readLine(input); null != line && !line.isEmpty();
+               line = readLine(input)) {
+            logger.trace("Ignoring trailer {}", line);
+          }
+          break;
+        }
+        body.write(input.readNBytes(size));
+        readLine(input);
+        sizeLine = readLine(input);
+      }
+      return body.toByteArray();
+    }
+
+    @Nullable
+    private static String readLine(InputStream input) throws IOException {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      int character = input.read();
+      if (character < 0) {
+        return null;
+      }
+      while (character >= 0 && character != '\n') {
+        if (character != '\r') {
+          line.write(character);
+        }
+        if (line.size() > MAX_LINE_LENGTH) {
+          throw new IOException("Request line too long");
+        }
+        character = input.read();
+      }
+      return line.toString(StandardCharsets.ISO_8859_1);
+    }
+  }
+}
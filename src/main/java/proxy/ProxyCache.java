@@ -0,0 +1,220 @@
+package proxy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Size bounded disk cache of the responses of the CachingProxy. Each response is stored as two
+ * files named after the hash of its key: the body, and its metadata as JSON. The cache is kept
+ * between runs, and when it grows over its maximum size the least recently used responses are
+ * deleted.
+ */
+public final class ProxyCache {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(ProxyCache.class);
+
+  private static final String BODY_EXTENSION = ".body";
+
+  private static final String METADATA_EXTENSION = ".json";
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private final Path directory;
+
+  private final long maxBytes;
+
+  /**
+   * The metadata of the stored responses by hash of their key, in least recently used order.
+   */
+  private final LinkedHashMap<String, CachedResponse> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  private long totalBytes;
+
+  private long evictionCount;
+
+  /**
+   * Constructor of the ProxyCache class. Loads the responses stored by the previous runs, the
+   * least recently modified first.
+   * @param directory the directory of the cache
+   * @param maxBytes maximum size of the bodies of the stored responses
+   * @throws IOException if the directory cannot be created or read
+   */
+  public ProxyCache(@NotNull Path directory, long maxBytes) throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    Files.createDirectories(directory);
+    List<Path> metadataFiles;
+    try (Stream<Path> files = Files.list(directory)) {
+      metadataFiles = files.filter(file -> file.toString().endsWith(METADATA_EXTENSION))
+          .sorted(Comparator.comparingLong(ProxyCache::lastModified))
+          .collect(Collectors.toList());
+    }
+    for (Path metadataFile : metadataFiles) {
+      String hash = metadataFile.getFileName().toString().replace(METADATA_EXTENSION, "");
+      try {
+        CachedResponse response = mapper.readValue(metadataFile.toFile(), CachedResponse.class);
+        if (Files.exists(getBodyFile(hash))) {
+          entries.put(hash, response);
+          totalBytes += response.getSize();
+        } else {
+          Files.delete(metadataFile);
+        }
+      } catch (IOException e) {
+        logger.warn("Dropping the unreadable cached response {}", metadataFile, e);
+        deleteFiles(hash);
+      }
+    }
+    synchronized (this) {
+      evict();
+    }
+    logger.info("Proxy cache {} loaded: {} responses, {} bytes", directory, entries.size(),
+        totalBytes);
+  }
+
+  /**
+   * Gets the metadata of a stored response, and marks it as recently used.
+   * @param key the key of the request
+   * @return the metadata, or null if the response is not stored
+   */
+  @Nullable
+  public synchronized CachedResponse get(@NotNull String key) {
+    return entries.get(hash(key));
+  }
+
+  /**
+   * Reads the body of a stored response.
+   * @param key the key of the request
+   * @return the body, or null if the response was evicted meanwhile
+   */
+  @Nullable
+  public byte[] getBody(@NotNull String key) {
+    try {
+      return Files.readAllBytes(getBodyFile(hash(key)));
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      logger.warn("Unable to read the cached response of {}", key, e);
+      return null;
+    }
+  }
+
+  /**
+   * Stores a response, replacing the previous one of the same key, and evicts the least recently
+   * used responses if the cache is over its size. Errors are only logged.
+   * @param key the key of the request
+   * @param response the metadata of the response
+   * @param body the body of the response
+   */
+  public void put(@NotNull String key, @NotNull CachedResponse response, @NotNull byte[] body) {
+    if (body.length > maxBytes) {
+      return;
+    }
+    String hash = hash(key);
+    try {
+      write(hash + BODY_EXTENSION, body);
+      write(hash + METADATA_EXTENSION, mapper.writeValueAsBytes(response));
+      synchronized (this) {
+        CachedResponse previous = entries.put(hash, response);
+        if (null != previous) {
+          totalBytes -= previous.getSize();
+        }
+        totalBytes += response.getSize();
+        evict();
+      }
+    } catch (IOException e) {
+      logger.warn("Unable to store the response of {}", key, e);
+    }
+  }
+
+  /**
+   * Saves the metadata of a response that was revalidated with the server.
+   * @param key the key of the request
+   * @param response the refreshed metadata
+   */
+  public void update(@NotNull String key, @NotNull CachedResponse response) {
+    try {
+      write(hash(key) + METADATA_EXTENSION, mapper.writeValueAsBytes(response));
+    } catch (IOException e) {
+      logger.warn("Unable to update the cached response of {}", key, e);
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<String, CachedResponse>> iterator = entries.entrySet().iterator();
+    List<String> evictedHashes = new ArrayList<>();
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      Map.Entry<String, CachedResponse> eldest = iterator.next();
+      totalBytes -= eldest.getValue().getSize();
+      evictedHashes.add(eldest.getKey());
+      iterator.remove();
+      evictionCount++;
+    }
+    evictedHashes.forEach(this::deleteFiles);
+  }
+
+  private void write(String fileName, byte[] content) throws IOException {
+    Path temporaryFile = Files.createTempFile(directory, fileName, ".tmp");
+    Files.write(temporaryFile, content);
+    Files.move(temporaryFile, directory.resolve(fileName), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void deleteFiles(String hash) {
+    try {
+      Files.deleteIfExists(getBodyFile(hash));
+      Files.deleteIfExists(directory.resolve(hash + METADATA_EXTENSION));
+    } catch (IOException e) {
+      logger.warn("Unable to delete the cached response {}", hash, e);
+    }
+  }
+
+  private Path getBodyFile(String hash) {
+    return directory.resolve(hash + BODY_EXTENSION);
+  }
+
+  private static String hash(String key) {
+    return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+  }
+
+  private static long lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file).toMillis();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+}
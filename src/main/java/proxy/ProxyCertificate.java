@@ -0,0 +1,93 @@
+package proxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Self-signed certificate the CachingProxy presents to the browsers for every HTTPS host it
+ * caches. It is created once with the keytool of the running JDK and kept in the cache directory.
+ * The browsers accept it because the proxy sessions are started with acceptInsecureCerts.
+ */
+final class ProxyCertificate {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(ProxyCertificate.class);
+
+  private static final String KEYSTORE_FILE = "proxy-certificate.p12";
+
+  private static final String ALIAS = "caching-proxy";
+
+  private static final char[] PASSWORD = "caching-proxy".toCharArray();
+
+  private static final int TIMEOUT_TO_CREATE_CERTIFICATE = 60;
+
+  /**
+   * Private constructor to hide the implicit one.
+   */
+  private ProxyCertificate() {
+
+  }
+
+  /**
+   * Creates the TLS context of the proxy, creating its certificate the first time.
+   * @param directory the directory where the certificate is kept
+   * @return SSLContext
+   * @throws IOException if the certificate cannot be created or loaded
+   */
+  static SSLContext createSslContext(@NotNull Path directory) throws IOException {
+    Path keystoreFile = directory.resolve(KEYSTORE_FILE);
+    if (!Files.exists(keystoreFile)) {
+      createCertificate(keystoreFile);
+    }
+    try (InputStream input = Files.newInputStream(keystoreFile)) {
+      KeyStore keyStore = KeyStore.getInstance("PKCS12");
+      keyStore.load(input, PASSWORD);
+      KeyManagerFactory keyManagerFactory =
+          KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      keyManagerFactory.init(keyStore, PASSWORD);
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+      return sslContext;
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Unable to load the proxy certificate " + keystoreFile, e);
+    }
+  }
+
+  private static void createCertificate(Path keystoreFile) throws IOException {
+    Files.createDirectories(keystoreFile.getParent());
+    String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+    Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", ALIAS,
+        "-keyalg", "RSA", "-keysize", "2048", "-validity", "3650",
+        "-dname", "CN=e2e caching proxy", "-ext", "SAN=dns:localhost",
+        "-storetype", "PKCS12", "-keystore", keystoreFile.toString(),
+        "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+        .redirectErrorStream(true)
+        .start();
+    try {
+      String output = new String(process.getInputStream().readAllBytes());
+      if (!process.waitFor(TIMEOUT_TO_CREATE_CERTIFICATE, TimeUnit.SECONDS)
+          || process.exitValue() != 0) {
+        process.destroyForcibly();
+        throw new IOException("keytool was unable to create the proxy certificate: " + output);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      process.destroyForcibly();
+      throw new IOException("Interrupted creating the proxy certificate", e);
+    }
+    logger.info("Proxy certificate created in {}", keystoreFile);
+  }
+}
@@ -0,0 +1,266 @@
+package utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import driver.DevToolsConnection;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.ITestResult;
+
+/**
+ * Keeps the last seconds of the browser of each test in memory and turns them into a video only
+ * when the test fails or is skipped, instead of recording every session in full. The frames go
+ * to a ring buffer of -DvideoFrames frames (30), downscaled to -DvideoWidth pixels (960) and
+ * encoded as JPEG. With BrowserType.CHROME_CDP they are the Page.screencastFrame events of the
+ * DevTools connection, pushed when the page changes and kept at most once per
+ * -DvideoFrameInterval milliseconds (1000). The other backends are only recorded with
+ * -DfailureVideo=true: a screenshot is taken by the test thread at the end of each page step, at
+ * most once per interval, so the capture never runs concurrently with the commands of the test.
+ * The passing tests only cost the captures, and their frames are dropped. -DfailureVideo=false
+ * disables the recording.
+ */
+public final class FailureVideoRecorder {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(FailureVideoRecorder.class);
+
+  private static final String SCREENCAST_FRAME = "Page.screencastFrame";
+
+  private static final int SCREENCAST_QUALITY = 60;
+
+  /**
+   * -DfailureVideo: true records all the backends, false none, unset only CHROME_CDP.
+   */
+  private static final String recordingSetting = System.getProperty("failureVideo");
+
+  private static final int maxFrames = Math.max(2, Integer.getInteger("videoFrames", 30));
+
+  private static final long frameInterval = Integer.getInteger("videoFrameInterval", 1000);
+
+  private static final int frameWidth = Integer.getInteger("videoWidth", 960);
+
+  /**
+   * Recorder of the browser of the test running in each thread.
+   */
+  private static final ThreadLocal<FailureVideoRecorder> currentRecorder = new ThreadLocal<>();
+
+  private final RemoteWebDriver webDriver;
+
+  private final Frame[] frames = new Frame[maxFrames];
+
+  /**
+   * Index of the next frame to write in the ring buffer.
+   */
+  private int nextFrame;
+
+  private int frameCount;
+
+  private DevToolsConnection connection;
+
+  private Consumer<JsonNode> screencastListener;
+
+  /**
+   * When the last frame was kept, used by the DevTools connection thread with the screencast and
+   * by the test thread otherwise.
+   */
+  private long lastFrameMillis;
+
+  private FailureVideoRecorder(RemoteWebDriver webDriver) {
+    this.webDriver = webDriver;
+  }
+
+  /**
+   * Starts recording the browser borrowed by the test running in the current thread. Does
+   * nothing if the thread is already recording.
+   * @param webDriver the browser of the test
+   */
+  public static void start(@NotNull RemoteWebDriver webDriver) {
+    if ("false".equalsIgnoreCase(recordingSetting) || null != currentRecorder.get()) {
+      return;
+    }
+    FailureVideoRecorder recorder = new FailureVideoRecorder(webDriver);
+    recorder.connection = DevToolsConnection.of(webDriver);
+    if (null == recorder.connection && !"true".equalsIgnoreCase(recordingSetting)) {
+      return;
+    }
+    try {
+      recorder.startScreencast();
+      currentRecorder.set(recorder);
+    } catch (WebDriverException e) {
+      logger.warn("Unable to record the browser, no video on failure", e);
+      recorder.stopScreencast();
+    }
+  }
+
+  /**
+   * Takes a frame of the browser of the current thread when it is recorded with screenshots and
+   * the last frame is older than the interval. Called by the test thread after each page step.
+   */
+  public static void captureFrame() {
+    FailureVideoRecorder recorder = currentRecorder.get();
+    if (null != recorder && null == recorder.connection
+        && System.currentTimeMillis() - recorder.lastFrameMillis >= frameInterval) {
+      recorder.captureScreenshot();
+    }
+  }
+
+  /**
+   * Stops the recording of the current thread and encodes it if the test failed or was skipped.
+   * @param result the result of the test
+   * @param testName the name of the video file, without extension
+   * @return the video file, or null if the test passed or nothing was recorded
+   */
+  @Nullable
+  public static Path finish(@NotNull ITestResult result, @NotNull String testName) {
+    FailureVideoRecorder recorder = currentRecorder.get();
+    if (null == recorder) {
+      return null;
+    }
+    currentRecorder.remove();
+    boolean failed = result.getStatus() == ITestResult.FAILURE
+        || result.getStatus() == ITestResult.SKIP;
+    if (failed) {
+      // the state of the page when the test failed
+      recorder.captureScreenshot();
+    }
+    recorder.stopScreencast();
+    if (!failed) {
+      return null;
+    }
+    List<Frame> frames = recorder.getFrames();
+    if (frames.isEmpty()) {
+      return null;
+    }
+    Path directory = OutputDirectory.resolve("extent", "HtmlReport");
+    try {
+      Path video = VideoEncoder.encode(frames, frameInterval, directory,
+          testName + "-" + System.currentTimeMillis());
+      logger.info("Video of the last {} frames: {}", frames.size(), video);
+      return video;
+    } catch (IOException e) {
+      logger.error("Unable to encode the video of {}", testName, e);
+      return null;
+    }
+  }
+
+  /**
+   * Stops the recording of the current thread without encoding it. Called when the browser is
+   * released, in case finish() was not.
+   */
+  public static void discard() {
+    FailureVideoRecorder recorder = currentRecorder.get();
+    if (null != recorder) {
+      currentRecorder.remove();
+      recorder.stopScreencast();
+    }
+  }
+
+  private void startScreencast() {
+    if (null == connection) {
+      return;
+    }
+    DevToolsConnection devTools = connection;
+    screencastListener = event -> {
+      JsonNode timestamp = event.path("metadata").path("timestamp");
+      long timestampMillis = timestamp.isNumber() ? (long) (timestamp.asDouble() * 1000)
+          : System.currentTimeMillis();
+      // at most one frame per interval, so the buffer covers the same time as the screenshots
+      if (timestampMillis - lastFrameMillis >= frameInterval) {
+        lastFrameMillis = timestampMillis;
+        addFrame(Base64.getDecoder().decode(event.path("data").asText()), timestampMillis);
+      }
+      // the browser sends the next frame once this one is acknowledged
+      Map<String, Object> ack = new HashMap<>();
+      ack.put("sessionId", event.path("sessionId").asInt());
+      devTools.send("Page.screencastFrameAck", ack).exceptionally(error -> null);
+    };
+    connection.addListener(SCREENCAST_FRAME, screencastListener);
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put("format", "jpeg");
+    parameters.put("quality", SCREENCAST_QUALITY);
+    parameters.put("maxWidth", frameWidth);
+    parameters.put("maxHeight", frameWidth);
+    connection.execute("Page.startScreencast", parameters);
+  }
+
+  private void stopScreencast() {
+    if (null != connection && null != screencastListener) {
+      connection.removeListener(SCREENCAST_FRAME, screencastListener);
+      connection.send("Page.stopScreencast", new HashMap<>()).exceptionally(error -> null);
+    }
+  }
+
+  /**
+   * Takes a screenshot on the test thread, stored downscaled as JPEG.
+   */
+  private void captureScreenshot() {
+    try {
+      long timestampMillis = System.currentTimeMillis();
+      byte[] frame = VideoEncoder.toJpegFrame(webDriver.getScreenshotAs(OutputType.BYTES),
+          frameWidth);
+      if (null != frame) {
+        lastFrameMillis = timestampMillis;
+        addFrame(frame, timestampMillis);
+      }
+    } catch (WebDriverException e) {
+      logger.debug("Unable to capture a video frame", e);
+    } catch (IOException e) {
+      logger.debug("Unable to encode a video frame", e);
+    }
+  }
+
+  private synchronized void addFrame(byte[] image, long timestampMillis) {
+    frames[nextFrame] = new Frame(image, timestampMillis);
+    nextFrame = (nextFrame + 1) % frames.length;
+    frameCount = Math.min(frameCount + 1, frames.length);
+  }
+
+  /**
+   * Gets the frames of the ring buffer, the oldest first.
+   */
+  private synchronized List<Frame> getFrames() {
+    List<Frame> ordered = new ArrayList<>(frameCount);
+    int first = (nextFrame - frameCount + frames.length) % frames.length;
+    for (int i = 0; i < frameCount; i++) {
+      ordered.add(frames[(first + i) % frames.length]);
+    }
+    return ordered;
+  }
+
+  /**
+   * A JPEG image of the browser and when it was captured.
+   */
+  static final class Frame {
+
+    private final byte[] image;
+
+    private final long timestampMillis;
+
+    private Frame(byte[] image, long timestampMillis) {
+      this.image = image;
+      this.timestampMillis = timestampMillis;
+    }
+
+    byte[] getImage() {
+      return image;
+    }
+
+    long getTimestampMillis() {
+      return timestampMillis;
+    }
+  }
+}
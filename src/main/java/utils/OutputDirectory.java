@@ -0,0 +1,38 @@
+package utils;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Directory where the suite writes its outputs: Extent screenshots, step timings and test history.
+ * Defaults to the build directory of the project, and can be changed with -DoutputDir so every
+ * JVM of a sharded run writes to its own directory.
+ */
+public final class OutputDirectory {
+
+  /**
+   * Private constructor to hide the implicit one.
+   */
+  private OutputDirectory() {
+
+  }
+
+  /**
+   * Gets the output directory.
+   * @return Path
+   */
+  public static Path get() {
+    String defaultDirectory = Paths.get(System.getProperty("user.dir"), "build").toString();
+    return Paths.get(System.getProperty("outputDir", defaultDirectory));
+  }
+
+  /**
+   * Resolves a path inside the output directory.
+   * @param first the first element of the path
+   * @param more the other elements of the path
+   * @return Path
+   */
+  public static Path resolve(String first, String... more) {
+    return get().resolve(Paths.get(first, more));
+  }
+}
@@ -0,0 +1,150 @@
+package utils;
+
+import com.google.common.hash.Hashing;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Content addressed store of the report screenshots. Each screenshot is named after the hash of
+ * its content, so identical captures (retries, parallel runs of the same page) are written once
+ * and referenced many times from the report. -DscreenshotDedup selects the hash: EXACT hashes the
+ * bytes with SHA-256, PERCEPTUAL uses a difference hash of the image, which also collapses frames
+ * that only differ in pixels nobody would notice, at the cost of decoding the image on the test
+ * thread.
+ */
+public final class ScreenshotStore {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(ScreenshotStore.class);
+
+  private static final String EXTENSION = ".jpeg";
+
+  private static final int DHASH_WIDTH = 9;
+
+  private static final int DHASH_HEIGHT = 8;
+
+  /**
+   * How screenshots are considered identical.
+   */
+  public enum DedupMode {
+    EXACT, PERCEPTUAL
+  }
+
+  private final Path directory;
+
+  private final ScreenshotWriter screenshotWriter;
+
+  private final DedupMode dedupMode;
+
+  /**
+   * Names of the screenshots already written or queued to be written.
+   */
+  private final Set<String> storedFileNames = ConcurrentHashMap.newKeySet();
+
+  private final AtomicLong duplicateCount = new AtomicLong();
+
+  /**
+   * Constructor of the ScreenshotStore class. Reads the hash from the command line arguments.
+   * @param directory the directory of the report the screenshots are written to
+   * @param screenshotWriter writes the screenshots in background threads
+   */
+  public ScreenshotStore(@NotNull Path directory, @NotNull ScreenshotWriter screenshotWriter) {
+    this(directory, screenshotWriter, DedupMode.valueOf(System.getProperty("screenshotDedup",
+        DedupMode.EXACT.name()).toUpperCase(Locale.ROOT)));
+  }
+
+  /**
+   * Constructor of the ScreenshotStore class.
+   * @param directory the directory of the report the screenshots are written to
+   * @param screenshotWriter writes the screenshots in background threads
+   * @param dedupMode how screenshots are considered identical
+   */
+  public ScreenshotStore(@NotNull Path directory, @NotNull ScreenshotWriter screenshotWriter,
+                         @NotNull DedupMode dedupMode) {
+    this.directory = directory;
+    this.screenshotWriter = screenshotWriter;
+    this.dedupMode = dedupMode;
+  }
+
+  /**
+   * Stores a screenshot, unless an identical one is already stored.
+   * @param screenshot the PNG bytes returned by the browser
+   * @return the file name of the screenshot, relative to the report directory, or null if the
+   *     screenshot was dropped by the writer
+   */
+  @Nullable
+  public String store(@NotNull byte[] screenshot) {
+    String fileName = hash(screenshot) + EXTENSION;
+    if (!storedFileNames.add(fileName) || Files.exists(directory.resolve(fileName))) {
+      duplicateCount.incrementAndGet();
+      logger.debug("Screenshot {} is already stored", fileName);
+      return fileName;
+    }
+    if (!screenshotWriter.submit(screenshot, directory.resolve(fileName))) {
+      storedFileNames.remove(fileName);
+      return null;
+    }
+    return fileName;
+  }
+
+  /**
+   * Gets the number of screenshots that were not written because they were already stored.
+   * @return long
+   */
+  public long getDuplicateCount() {
+    return duplicateCount.get();
+  }
+
+  private String hash(byte[] screenshot) {
+    if (dedupMode == DedupMode.PERCEPTUAL) {
+      try {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(screenshot));
+        if (null != image) {
+          return String.format("p%016x", differenceHash(image));
+        }
+      } catch (IOException e) {
+        logger.debug("Unable to decode the screenshot, hashing its bytes", e);
+      }
+    }
+    return Hashing.sha256().hashBytes(screenshot).toString();
+  }
+
+  /**
+   * Difference hash: the image is reduced to 9x8 gray pixels and each bit tells whether a pixel is
+   * brighter than its right neighbour.
+   */
+  private static long differenceHash(BufferedImage image) {
+    BufferedImage small = new BufferedImage(DHASH_WIDTH, DHASH_HEIGHT,
+        BufferedImage.TYPE_BYTE_GRAY);
+    Graphics2D graphics = small.createGraphics();
+    try {
+      graphics.drawImage(image, 0, 0, DHASH_WIDTH, DHASH_HEIGHT, null);
+    } finally {
+      graphics.dispose();
+    }
+    long hash = 0;
+    for (int y = 0; y < DHASH_HEIGHT; y++) {
+      for (int x = 0; x < DHASH_WIDTH - 1; x++) {
+        int left = small.getRaster().getSample(x, y, 0);
+        int right = small.getRaster().getSample(x + 1, y, 0);
+        hash = (hash << 1) | (left > right ? 1 : 0);
+      }
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,230 @@
+package utils;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Encodes and writes the screenshots in background threads, so the test thread only pays for
+ * taking the screenshot. The screenshots are downscaled (-DscreenshotScale), encoded as JPEG
+ * (-DscreenshotQuality) and written by -DscreenshotThreads threads. When the queue of
+ * -DscreenshotQueueSize pending screenshots is full, -DscreenshotQueuePolicy decides what happens:
+ * DROP discards the new screenshot, BLOCK makes the test thread wait, and SAMPLE keeps one out of
+ * -DscreenshotSampleRate screenshots, waiting for it, and discards the others.
+ */
+public final class ScreenshotWriter {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(ScreenshotWriter.class);
+
+  private static final String THREAD_ID = "threadId";
+
+  private static final int DEFAULT_THREADS = 2;
+  private static final int DEFAULT_QUEUE_SIZE = 32;
+  private static final int DEFAULT_SAMPLE_RATE = 4;
+  private static final float DEFAULT_QUALITY = 0.8f;
+  private static final int TIMEOUT_TO_WRITE_SCREENSHOTS = 60;
+
+  /**
+   * What to do with a new screenshot when the queue is full.
+   */
+  public enum QueuePolicy {
+    DROP, BLOCK, SAMPLE
+  }
+
+  /**
+   * Task queued once per thread by finish() to stop the background threads.
+   */
+  private static final Runnable STOP = () -> { };
+
+  private final BlockingQueue<Runnable> queue;
+
+  private final List<Thread> threads = new ArrayList<>();
+
+  private final QueuePolicy queuePolicy;
+
+  private final int sampleRate;
+
+  private final double scale;
+
+  private final float quality;
+
+  private final AtomicLong fullQueueCount = new AtomicLong();
+
+  private final AtomicLong writtenCount = new AtomicLong();
+
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  /**
+   * Constructor of the ScreenshotWriter class. Reads the settings from the command line arguments.
+   */
+  public ScreenshotWriter() {
+    this(Integer.getInteger("screenshotThreads", DEFAULT_THREADS),
+        Integer.getInteger("screenshotQueueSize", DEFAULT_QUEUE_SIZE),
+        QueuePolicy.valueOf(System.getProperty("screenshotQueuePolicy", QueuePolicy.BLOCK.name())
+            .toUpperCase(Locale.ROOT)),
+        Integer.getInteger("screenshotSampleRate", DEFAULT_SAMPLE_RATE),
+        Double.parseDouble(System.getProperty("screenshotScale", "1.0")),
+        Float.parseFloat(System.getProperty("screenshotQuality",
+            String.valueOf(DEFAULT_QUALITY))));
+  }
+
+  /**
+   * Constructor of the ScreenshotWriter class.
+   * @param threads number of threads encoding and writing screenshots
+   * @param queueSize maximum number of screenshots waiting to be written
+   * @param queuePolicy what to do with a new screenshot when the queue is full
+   * @param sampleRate with SAMPLE, one out of sampleRate screenshots is kept when the queue is full
+   * @param scale factor applied to the width and height of the screenshots, 1.0 keeps the size
+   * @param quality JPEG quality, between 0.0 and 1.0
+   */
+  public ScreenshotWriter(int threads, int queueSize, @NotNull QueuePolicy queuePolicy,
+                          int sampleRate, double scale, float quality) {
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.queuePolicy = queuePolicy;
+    this.sampleRate = Math.max(1, sampleRate);
+    this.scale = scale;
+    this.quality = quality;
+    for (int i = 1; i <= threads; i++) {
+      Thread thread = new Thread(this::writeQueuedScreenshots, "screenshot-writer-" + i);
+      thread.setDaemon(true);
+      thread.start();
+      this.threads.add(thread);
+    }
+  }
+
+  /**
+   * Queues a screenshot to be encoded and written to the given file.
+   * @param screenshot the PNG bytes returned by the browser
+   * @param file the file the JPEG screenshot is written to
+   * @return true if the screenshot will be written, false if it was dropped
+   */
+  public boolean submit(@NotNull byte[] screenshot, @NotNull Path file) {
+    Runnable task = () -> write(screenshot, file);
+    if (queue.offer(task)) {
+      return true;
+    }
+    long fullQueue = fullQueueCount.incrementAndGet();
+    if (queuePolicy == QueuePolicy.DROP
+        || queuePolicy == QueuePolicy.SAMPLE && fullQueue % sampleRate != 0) {
+      droppedCount.incrementAndGet();
+      logger.debug("Screenshot queue is full, dropping screenshot {}", file.getFileName());
+      return false;
+    }
+    try {
+      queue.put(task);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      droppedCount.incrementAndGet();
+      return false;
+    }
+  }
+
+  /**
+   * Waits until all the queued screenshots are written and stops the background threads.
+   */
+  public void finish() {
+    final long deadline = System.nanoTime()
+        + TimeUnit.SECONDS.toNanos(TIMEOUT_TO_WRITE_SCREENSHOTS);
+    try {
+      for (int i = 0; i < threads.size(); i++) {
+        queue.put(STOP);
+      }
+      for (Thread thread : threads) {
+        thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (!queue.isEmpty()) {
+      logger.warn("Screenshots still pending after {} seconds", TIMEOUT_TO_WRITE_SCREENSHOTS);
+    }
+    logger.info("Screenshots written: {}, dropped: {}", writtenCount.get(), droppedCount.get());
+  }
+
+  private void writeQueuedScreenshots() {
+    ThreadContext.put(THREAD_ID, Thread.currentThread().getName());
+    try {
+      Runnable task = queue.take();
+      while (task != STOP) {
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          logger.error("Exception writing the screenshot", e);
+        }
+        task = queue.take();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void write(byte[] screenshot, Path file) {
+    try {
+      BufferedImage image = ImageIO.read(new ByteArrayInputStream(screenshot));
+      if (null == image) {
+        logger.error("Unable to decode the screenshot {}", file.getFileName());
+        return;
+      }
+      Files.createDirectories(file.getParent());
+      writeJpeg(toRgb(image), file);
+      writtenCount.incrementAndGet();
+    } catch (IOException e) {
+      logger.error("Exception creating the screenshot file", e);
+    }
+  }
+
+  /**
+   * Scales the image and drops the alpha channel, which JPEG does not support.
+   */
+  private BufferedImage toRgb(BufferedImage image) {
+    int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+    int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+    BufferedImage rgbImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = rgbImage.createGraphics();
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.drawImage(image, 0, 0, width, height, null);
+    } finally {
+      graphics.dispose();
+    }
+    return rgbImage;
+  }
+
+  private void writeJpeg(BufferedImage image, Path file) throws IOException {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    param.setCompressionQuality(quality);
+    try (ImageOutputStream output = ImageIO.createImageOutputStream(file.toFile())) {
+      writer.setOutput(output);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+  }
+}
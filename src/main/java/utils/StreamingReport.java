@@ -0,0 +1,298 @@
+package utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.testng.ITestResult;
+
+/**
+ * Test report written while the suite runs, one finished test at a time, instead of being kept in
+ * memory until the end of the suite like ExtentReport. Each test is appended as a JSON object to
+ * events.ndjson and rendered at the end of index.html, and both files are flushed, so the memory
+ * does not grow with the suite and a run that is killed still leaves the report of the tests that
+ * finished. Only the footer with the totals is written when the report is closed.
+ */
+public final class StreamingReport implements AutoCloseable {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(StreamingReport.class);
+
+  /**
+   * The file with one JSON object per finished test.
+   */
+  public static final String EVENTS_FILE = "events.ndjson";
+
+  /**
+   * The HTML report.
+   */
+  public static final String INDEX_FILE = "index.html";
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private static final String HEADER = "<!DOCTYPE html>\n"
+      + "<html>\n"
+      + "<head>\n"
+      + "<meta charset=\"utf-8\">\n"
+      + "<title>Test report</title>\n"
+      + "<style>\n"
+      + "body { font-family: sans-serif; margin: 2em; }\n"
+      + "details { border-left: 4px solid #999; margin: 0.5em 0; padding: 0.3em 0.8em; }\n"
+      + "details.pass { border-color: #2e7d32; }\n"
+      + "details.fail { border-color: #c62828; }\n"
+      + "details.skip { border-color: #f9a825; }\n"
+      + "summary { cursor: pointer; }\n"
+      + ".status { display: inline-block; width: 3.5em; font-weight: bold; }\n"
+      + ".meta { color: #666; font-size: 0.9em; }\n"
+      + "li.fail { color: #c62828; }\n"
+      + "pre { background: #f5f5f5; overflow-x: auto; padding: 0.5em; }\n"
+      + "img { display: block; max-width: 480px; margin: 0.3em 0; }\n"
+      + "</style>\n"
+      + "</head>\n"
+      + "<body>\n"
+      + "<h1>Test report</h1>\n";
+
+  private final Path directory;
+
+  private final Path screenshotDirectory;
+
+  private Writer events;
+
+  private Writer index;
+
+  private boolean opened;
+
+  private boolean closed;
+
+  private int passed;
+
+  private int failed;
+
+  private int skipped;
+
+  /**
+   * Constructor of the StreamingReport class. The files are created when the first test is
+   * appended.
+   * @param directory the directory of events.ndjson and index.html
+   * @param screenshotDirectory the directory of the screenshots the report entries refer to
+   */
+  public StreamingReport(@NotNull Path directory, @NotNull Path screenshotDirectory) {
+    this.directory = directory;
+    this.screenshotDirectory = screenshotDirectory;
+  }
+
+  /**
+   * Creates the event of a finished test.
+   * @param context the reporter state of the test
+   * @param result the result of the test
+   * @param entries the report entries of the test
+   * @return the event, as written to events.ndjson
+   */
+  static ObjectNode createTestEvent(@NotNull TestReportContext context,
+                                    @NotNull ITestResult result,
+                                    @NotNull List<TestReportContext.Entry> entries) {
+    ObjectNode event = mapper.createObjectNode();
+    event.put("event", "test");
+    event.put("name", context.getTestName());
+    event.put("class", result.getTestClass().getName());
+    event.put("status", getStatusName(result.getStatus()));
+    event.put("retry", context.getRetryCount());
+    event.put("thread", Thread.currentThread().getName());
+    event.put("start", Instant.ofEpochMilli(result.getStartMillis()).toString());
+    event.put("durationMs", Math.max(0, result.getEndMillis() - result.getStartMillis()));
+    if (null != result.getThrowable()) {
+      event.put("error", getStackTrace(result.getThrowable()));
+    }
+    ArrayNode steps = event.putArray("steps");
+    for (TestReportContext.Entry entry : entries) {
+      ObjectNode step = steps.addObject();
+      step.put("status", entry.getStatus().name().toLowerCase(Locale.ROOT));
+      step.put("message", entry.getMessage());
+      step.put("time", Instant.ofEpochMilli(entry.getTimestampMillis()).toString());
+      if (null != entry.getScreenshotPath()) {
+        step.put("screenshot", entry.getScreenshotPath());
+      }
+    }
+    return event;
+  }
+
+  /**
+   * Appends a finished test to the report and flushes it. The files are truncated when the first
+   * test is appended. A report that cannot be written is disabled instead of failing the tests.
+   * @param event the event of the test, from createTestEvent() or read back from events.ndjson
+   */
+  public synchronized void append(@NotNull JsonNode event) {
+    if (closed) {
+      logger.warn("The report is already closed, not adding {}", event.path("name").asText());
+      return;
+    }
+    try {
+      if (!opened) {
+        open();
+      }
+      events.write(mapper.writeValueAsString(event));
+      events.write('\n');
+      events.flush();
+      index.write(render(event));
+      index.flush();
+      countStatus(event.path("status").asText());
+    } catch (IOException e) {
+      logger.error("Unable to write the report in {}, disabling it", directory, e);
+      closeQuietly();
+    }
+  }
+
+  /**
+   * Writes the totals at the end of index.html and closes the files.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    if (opened) {
+      try {
+        index.write("<p class=\"meta\">Finished " + Instant.now() + ": " + passed + " passed, "
+            + failed + " failed, " + skipped + " skipped</p>\n</body>\n</html>\n");
+      } catch (IOException e) {
+        logger.error("Unable to finish the report {}", directory.resolve(INDEX_FILE), e);
+      }
+      logger.info("Streaming report: {}", directory.resolve(INDEX_FILE));
+    }
+    closeQuietly();
+  }
+
+  private void open() throws IOException {
+    opened = true;
+    Files.createDirectories(directory);
+    events = Files.newBufferedWriter(directory.resolve(EVENTS_FILE), StandardCharsets.UTF_8);
+    index = Files.newBufferedWriter(directory.resolve(INDEX_FILE), StandardCharsets.UTF_8);
+    index.write(HEADER);
+    index.write("<p class=\"meta\">Started " + Instant.now() + "</p>\n");
+  }
+
+  private void closeQuietly() {
+    closed = true;
+    for (Writer writer : new Writer[] {events, index}) {
+      if (null == writer) {
+        continue;
+      }
+      try {
+        writer.close();
+      } catch (IOException e) {
+        logger.debug("Unable to close the report file", e);
+      }
+    }
+  }
+
+  private String render(JsonNode event) {
+    String status = event.path("status").asText();
+    StringBuilder html = new StringBuilder(512);
+    html.append("<details class=\"").append(escape(status)).append('"')
+        .append("pass".equals(status) ? "" : " open").append(">\n<summary>")
+        .append("<span class=\"status\">").append(escape(status.toUpperCase(Locale.ROOT)))
+        .append("</span> ")
+        .append(escape(event.path("name").asText()))
+        .append(" <span class=\"meta\">").append(escape(event.path("class").asText()))
+        .append(", retry ").append(event.path("retry").asInt())
+        .append(", ").append(event.path("durationMs").asLong()).append(" ms")
+        .append(", ").append(escape(event.path("thread").asText()))
+        .append("</span></summary>\n");
+    if (event.hasNonNull("error")) {
+      html.append("<pre>").append(escape(event.get("error").asText())).append("</pre>\n");
+    }
+    html.append("<ul>\n");
+    for (JsonNode step : event.path("steps")) {
+      html.append("<li class=\"").append(escape(step.path("status").asText())).append("\">");
+      if (step.hasNonNull("time")) {
+        html.append("<span class=\"meta\">").append(escape(step.get("time").asText()))
+            .append("</span> ");
+      }
+      html.append(escape(step.path("message").asText()));
+      if (step.hasNonNull("screenshot")) {
+        String link = escape(getScreenshotLink(step.get("screenshot").asText()));
+        html.append("<a href=\"").append(link).append("\"><img src=\"").append(link)
+            .append("\" loading=\"lazy\" alt=\"screenshot\"></a>");
+      }
+      html.append("</li>\n");
+    }
+    return html.append("</ul>\n</details>\n").toString();
+  }
+
+  /**
+   * Gets the link to a screenshot, relative to the report directory.
+   */
+  private String getScreenshotLink(String screenshot) {
+    Path relative = directory.toAbsolutePath().normalize()
+        .relativize(screenshotDirectory.toAbsolutePath().normalize().resolve(screenshot));
+    return relative.toString().replace('\\', '/');
+  }
+
+  private void countStatus(String status) {
+    if ("pass".equals(status)) {
+      passed++;
+    } else if ("fail".equals(status)) {
+      failed++;
+    } else if ("skip".equals(status)) {
+      skipped++;
+    }
+  }
+
+  private static String getStackTrace(Throwable throwable) {
+    StringWriter stackTrace = new StringWriter();
+    throwable.printStackTrace(new PrintWriter(stackTrace));
+    return stackTrace.toString().trim();
+  }
+
+  private static String getStatusName(int status) {
+    switch (status) {
+      case ITestResult.SUCCESS:
+        return "pass";
+      case ITestResult.FAILURE:
+        return "fail";
+      case ITestResult.SKIP:
+        return "skip";
+      default:
+        return "unknown";
+    }
+  }
+
+  private static String escape(String text) {
+    StringBuilder escaped = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '<':
+          escaped.append("&lt;");
+          break;
+        case '>':
+          escaped.append("&gt;");
+          break;
+        case '&':
+          escaped.append("&amp;");
+          break;
+        case '"':
+          escaped.append("&quot;");
+          break;
+        default:
+          escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+}
@@ -1,6 +1,9 @@
 package utils;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 
 public final class TestAccount {
@@ -19,6 +22,9 @@ public final class TestAccount {
   @JsonProperty("walletId")
   private String walletId = "";
 
+  @JsonProperty("tags")
+  private List<String> tags = new ArrayList<>();
+
 
   /**
    * Default constructor.
@@ -63,4 +69,8 @@ public final class TestAccount {
   public String walletId() {
     return this.walletId;
   }
+
+  public List<String> tags() {
+    return Collections.unmodifiableList(this.tags);
+  }
 }
@@ -0,0 +1,225 @@
+package utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Index of a JSON array of test accounts that keeps only the byte range of each account and the
+ * fields it can be looked up by (email, walletId and tags), and reads an account from the file
+ * when it is needed. The file is scanned once with the streaming parser of Jackson, so the whole
+ * set of accounts is never on the heap. With -DtestDataMmap=true the file is memory mapped, and
+ * the forked JVMs of a sharded run share its pages instead of each one reading it.
+ */
+public final class TestAccountIndex implements AutoCloseable {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(TestAccountIndex.class);
+
+  /**
+   * Reads the accounts, ignoring the fields that TestAccount does not have like the scan does.
+   */
+  private static final ObjectMapper mapper = new ObjectMapper()
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final Path file;
+
+  private final FileChannel channel;
+
+  private final MappedByteBuffer mappedFile;
+
+  private long[] offsets = new long[INITIAL_CAPACITY];
+
+  private int[] lengths = new int[INITIAL_CAPACITY];
+
+  private int size;
+
+  private final Map<String, Integer> emailIndex = new HashMap<>();
+
+  private final Map<String, Integer> walletIdIndex = new HashMap<>();
+
+  private final Map<String, BitSet> tagIndex = new HashMap<>();
+
+  private TestAccountIndex(Path file, boolean memoryMapped) throws IOException {
+    this.file = file;
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    this.mappedFile = memoryMapped && channel.size() <= Integer.MAX_VALUE
+        ? channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) : null;
+  }
+
+  /**
+   * Scans the file and builds the index of its accounts.
+   * @param file a JSON array of accounts
+   * @param memoryMapped true to read the accounts from a memory mapping of the file
+   * @return TestAccountIndex
+   * @throws IOException if the file cannot be read, is not a JSON array of objects, or has tags
+   *     that are not arrays of strings
+   */
+  public static TestAccountIndex open(@NotNull Path file, boolean memoryMapped)
+      throws IOException {
+    TestAccountIndex index = new TestAccountIndex(file, memoryMapped);
+    try (InputStream input = new BufferedInputStream(Files.newInputStream(file));
+         JsonParser parser = mapper.getFactory().createParser(input)) {
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        throw new IOException("The test data " + file + " is not a JSON array");
+      }
+      while (parser.nextToken() == JsonToken.START_OBJECT) {
+        index.addAccount(parser);
+      }
+      if (parser.currentToken() != JsonToken.END_ARRAY) {
+        throw new IOException("The test data " + file + " has a " + parser.currentToken()
+            + " at byte " + parser.getTokenLocation().getByteOffset() + " instead of an account");
+      }
+    } catch (IOException e) {
+      index.close();
+      throw e;
+    }
+    logger.info("Indexed {} test accounts of {}", index.size, file);
+    return index;
+  }
+
+  /**
+   * Reads the fields used for lookups, skips the other ones and records the byte range of the
+   * account. The parser is at the start of the account object.
+   */
+  private void addAccount(JsonParser parser) throws IOException {
+    final long start = parser.getTokenLocation().getByteOffset();
+    final int position = size;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldName = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if ("email".equals(fieldName) && value == JsonToken.VALUE_STRING) {
+        emailIndex.put(parser.getText(), position);
+      } else if ("walletId".equals(fieldName) && value == JsonToken.VALUE_STRING) {
+        walletIdIndex.put(parser.getText(), position);
+      } else if ("tags".equals(fieldName) && value != JsonToken.VALUE_NULL) {
+        addTags(parser, position);
+      } else {
+        parser.skipChildren();
+      }
+    }
+    final long end = parser.getCurrentLocation().getByteOffset();
+    if (size == offsets.length) {
+      offsets = Arrays.copyOf(offsets, size * 2);
+      lengths = Arrays.copyOf(lengths, size * 2);
+    }
+    offsets[size] = start;
+    lengths[size] = (int) (end - start);
+    size++;
+  }
+
+  /**
+   * Indexes the tags of an account. The parser is at the value of its tags field, which must be an
+   * array of strings like the tags of TestAccount: an account that could be indexed but not read
+   * would fail the leases that pick it.
+   */
+  private void addTags(JsonParser parser, int position) throws IOException {
+    JsonToken tag = parser.currentToken();
+    if (tag == JsonToken.START_ARRAY) {
+      tag = parser.nextToken();
+      while (tag == JsonToken.VALUE_STRING) {
+        tagIndex.computeIfAbsent(parser.getText(), name -> new BitSet()).set(position);
+        tag = parser.nextToken();
+      }
+      if (tag == JsonToken.END_ARRAY) {
+        return;
+      }
+    }
+    throw new IOException("The test data " + file + " has a " + tag + " at byte "
+        + parser.getTokenLocation().getByteOffset() + " instead of a tag");
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Reads an account from the file.
+   * @param position the position of the account in the file, between 0 and size() - 1
+   * @return TestAccount
+   * @throws UncheckedIOException if the account cannot be read
+   */
+  public TestAccount get(int position) {
+    if (position < 0 || position >= size) {
+      throw new IndexOutOfBoundsException("No test account at position " + position);
+    }
+    try {
+      return mapper.readValue(read(offsets[position], lengths[position]), TestAccount.class);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to read the test account " + position + " of "
+          + file, e);
+    }
+  }
+
+  /**
+   * Gets the position of the account with the given email.
+   * @param email the email of the account
+   * @return the position, or -1 if there is no such account
+   */
+  public int findByEmail(@NotNull String email) {
+    return emailIndex.getOrDefault(email, -1);
+  }
+
+  /**
+   * Gets the position of the account with the given wallet id.
+   * @param walletId the wallet id of the account
+   * @return the position, or -1 if there is no such account
+   */
+  public int findByWalletId(@NotNull String walletId) {
+    return walletIdIndex.getOrDefault(walletId, -1);
+  }
+
+  /**
+   * Gets the positions of the accounts with the given tag.
+   * @param tag the tag of the accounts
+   * @return a copy of the set of positions, empty if no account has the tag
+   */
+  public BitSet findByTag(@NotNull String tag) {
+    BitSet positions = tagIndex.get(tag);
+    return null == positions ? new BitSet() : (BitSet) positions.clone();
+  }
+
+  private byte[] read(long offset, int length) throws IOException {
+    byte[] bytes = new byte[length];
+    if (null != mappedFile) {
+      ByteBuffer account = mappedFile.duplicate();
+      account.position((int) offset);
+      account.get(bytes);
+      return bytes;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of " + file);
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
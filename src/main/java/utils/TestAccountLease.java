@@ -0,0 +1,63 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Exclusive use of a TestAccount by one test. Closing the lease gives the account back to the
+ * TestAccountProvider, so it is meant to be used in a try-with-resources block.
+ */
+public final class TestAccountLease implements AutoCloseable {
+
+  private final TestAccount account;
+
+  private final int position;
+
+  private final String holder;
+
+  private final long leasedAtMillis;
+
+  private final AtomicBoolean released = new AtomicBoolean();
+
+  TestAccountLease(@NotNull TestAccount account, int position, @NotNull String holder) {
+    this.account = account;
+    this.position = position;
+    this.holder = holder;
+    this.leasedAtMillis = System.currentTimeMillis();
+  }
+
+  public TestAccount account() {
+    return account;
+  }
+
+  /**
+   * Gets the position of the account in the test data.
+   * @return int
+   */
+  int getPosition() {
+    return position;
+  }
+
+  /**
+   * Gets the name of the thread that took the lease, followed by the qualified name of its test
+   * when it was taken in a test.
+   * @return String
+   */
+  public String getHolder() {
+    return holder;
+  }
+
+  public long getLeasedAtMillis() {
+    return leasedAtMillis;
+  }
+
+  /**
+   * Gives the account back. Closing a lease more than once has no effect.
+   */
+  @Override
+  public void close() {
+    if (released.compareAndSet(false, true)) {
+      TestAccountProvider.release(this);
+    }
+  }
+}
@@ -1,47 +1,265 @@
 package utils;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.testng.ITestResult;
+import org.testng.Reporter;
 
+/**
+ * Leases the test accounts of -DtestAccounts (test-data/testAccounts.json by default), so two
+ * parallel tests never log into the same wallet. The file is indexed on first use by
+ * TestAccountIndex, and an account is only read from it when it is leased or looked up. The free
+ * accounts wait in a lock-free queue. A released account can be leased again after
+ * -DaccountCooldownMillis (1000 by default), and a test waits up to -DaccountLeaseTimeout seconds
+ * (120 by default) for a free account.
+ */
 public final class TestAccountProvider {
-  private static List<TestAccount> testAccountsList = new ArrayList<>();
+  private static final String DEFAULT_TEST_ACCOUNTS = "test-data/testAccounts.json";
   private static final SecureRandom random = new SecureRandom();
   private static final Logger logger = LogManager.getLogger(TestAccountProvider.class);
 
+  private static final long DEFAULT_COOLDOWN_MILLIS = 1_000;
+  private static final int DEFAULT_LEASE_TIMEOUT = 120;
+  private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+  private static final long cooldownNanos = TimeUnit.MILLISECONDS.toNanos(
+      Long.getLong("accountCooldownMillis", DEFAULT_COOLDOWN_MILLIS));
+
+  private static final Duration leaseTimeout =
+      Duration.ofSeconds(Integer.getInteger("accountLeaseTimeout", DEFAULT_LEASE_TIMEOUT));
+
+  private static final Queue<FreeAccount> freeAccounts = new ConcurrentLinkedQueue<>();
+
+  private static final Map<TestAccountLease, Boolean> activeLeases = new ConcurrentHashMap<>();
+
+  private static volatile TestAccountIndex accountIndex;
+
   private TestAccountProvider() {
   }
 
-  static {
-    try {
-      // create object mapper instance
-      ObjectMapper mapper = new ObjectMapper();
+  /**
+   * Gets the index of the test accounts, building it on the first call.
+   * @return TestAccountIndex
+   * @throws IllegalStateException if the test accounts cannot be read
+   */
+  private static TestAccountIndex getIndex() {
+    TestAccountIndex index = accountIndex;
+    if (null != index) {
+      return index;
+    }
+    synchronized (TestAccountProvider.class) {
+      if (null == accountIndex) {
+        Path file = Paths.get(System.getProperty("testAccounts", DEFAULT_TEST_ACCOUNTS));
+        try {
+          index = TestAccountIndex.open(file,
+              Boolean.parseBoolean(System.getProperty("testDataMmap", "false")));
+        } catch (IOException e) {
+          throw new IllegalStateException("Unable to load the test accounts of " + file, e);
+        }
+        if (index.size() == 0) {
+          throw new IllegalStateException("There are no test accounts in " + file);
+        }
+        // spread the use of the accounts between runs
+        List<Integer> positions = new ArrayList<>(index.size());
+        for (int i = 0; i < index.size(); i++) {
+          positions.add(i);
+        }
+        Collections.shuffle(positions, random);
+        final long now = System.nanoTime();
+        positions.forEach(position -> freeAccounts.add(new FreeAccount(position, now)));
+        accountIndex = index;
+      }
+      return accountIndex;
+    }
+  }
+
+  /**
+   * Reads the account with the given email, without leasing it.
+   * @param email the email of the account
+   * @return the account, or null if there is no such account
+   */
+  @Nullable
+  public static TestAccount findByEmail(@NotNull String email) {
+    int position = getIndex().findByEmail(email);
+    return position < 0 ? null : getIndex().get(position);
+  }
+
+  /**
+   * Reads the account with the given wallet id, without leasing it.
+   * @param walletId the wallet id of the account
+   * @return the account, or null if there is no such account
+   */
+  @Nullable
+  public static TestAccount findByWalletId(@NotNull String walletId) {
+    int position = getIndex().findByWalletId(walletId);
+    return position < 0 ? null : getIndex().get(position);
+  }
+
+  /**
+   * Leases a free TestAccount, waiting up to -DaccountLeaseTimeout seconds for one.
+   * @return the lease of the account, to be closed when the test does not need it anymore
+   * @throws IllegalStateException if no account was released before the timeout
+   */
+  public static TestAccountLease lease() {
+    return lease(leaseTimeout);
+  }
 
-      // convert JSON array to list of accounts
-      testAccountsList = Arrays
-          .asList(mapper.readValue(Paths.get("test-data/testAccounts.json").toFile(),
-              TestAccount[].class));
-    } catch (Exception e) {
-      logger.error(e);
+  /**
+   * Leases a free TestAccount, waiting up to the given timeout for one.
+   * @param timeout maximum time to wait for a free account
+   * @return the lease of the account, to be closed when the test does not need it anymore
+   * @throws IllegalStateException if no account was released before the timeout
+   */
+  public static TestAccountLease lease(@NotNull Duration timeout) {
+    return lease(null, timeout);
+  }
+
+  /**
+   * Leases a free TestAccount with the given tag, waiting up to -DaccountLeaseTimeout seconds for
+   * one.
+   * @param tag the tag of the account, as in the tags field of the test data
+   * @return the lease of the account, to be closed when the test does not need it anymore
+   * @throws IllegalStateException if no account with the tag was released before the timeout
+   */
+  public static TestAccountLease leaseWithTag(@NotNull String tag) {
+    if (getIndex().findByTag(tag).isEmpty()) {
+      throw new IllegalStateException("There are no test accounts with the tag " + tag);
     }
+    return lease(tag, leaseTimeout);
+  }
+
+  private static TestAccountLease lease(@Nullable String tag, @NotNull Duration timeout) {
+    final long deadline = System.nanoTime() + timeout.toNanos();
+    long backoffNanos = MIN_BACKOFF_NANOS;
+    TestAccountLease lease = tryLease(tag);
+    while (null == lease) {
+      long remainingNanos = deadline - System.nanoTime();
+      if (remainingNanos <= 0) {
+        throw new IllegalStateException("No test account was free after " + timeout.getSeconds()
+            + " seconds, leased by: " + getHolders());
+      }
+      LockSupport.parkNanos(Math.min(backoffNanos, remainingNanos));
+      backoffNanos = Math.min(backoffNanos * 2, MAX_BACKOFF_NANOS);
+      lease = tryLease(tag);
+    }
+    return lease;
   }
 
   /**
-   * Get a random TestAccount from the testAccountsList.
-   * @return TestAccount object.
+   * Leases a free TestAccount if there is one, without waiting.
+   * @return the lease of the account, or null if all the accounts are leased or cooling down
    */
-  public static TestAccount getAccount() {
-    logger.info("Selecting a random account from the list.");
-    TestAccount account = testAccountsList.get(random.nextInt(testAccountsList.size()));
-    logger.debug("Test account email: {}", account.email());
-    logger.debug("Test account password: {}", account.password());
-    logger.debug("Test account first name: {}", account.firstName());
-    logger.debug("Test account last name: {}", account.lastName());
-    return account;
+  @Nullable
+  public static TestAccountLease tryLease() {
+    return tryLease(null);
+  }
+
+  @Nullable
+  private static TestAccountLease tryLease(@Nullable String tag) {
+    TestAccountIndex index = getIndex();
+    BitSet taggedPositions = null == tag ? null : index.findByTag(tag);
+    final long now = System.nanoTime();
+    // each account is looked at once at most: the ones cooling down go back to the queue
+    for (int i = freeAccounts.size(); i > 0; i--) {
+      FreeAccount freeAccount = freeAccounts.poll();
+      if (null == freeAccount) {
+        return null;
+      }
+      if (now - freeAccount.freeAtNanos >= 0
+          && (null == taggedPositions || taggedPositions.get(freeAccount.position))) {
+        TestAccount account;
+        try {
+          account = index.get(freeAccount.position);
+        } catch (RuntimeException e) {
+          freeAccounts.add(freeAccount);
+          throw e;
+        }
+        TestAccountLease lease = new TestAccountLease(account, freeAccount.position,
+            getCurrentHolder());
+        activeLeases.put(lease, Boolean.TRUE);
+        logger.info("Leased test account {}", account.email());
+        return lease;
+      }
+      freeAccounts.add(freeAccount);
+    }
+    return null;
+  }
+
+  /**
+   * Gives a leased account back, free to lease again after the cooldown.
+   * @param lease the lease being closed
+   */
+  static void release(@NotNull TestAccountLease lease) {
+    if (null == activeLeases.remove(lease)) {
+      return;
+    }
+    freeAccounts.add(new FreeAccount(lease.getPosition(), System.nanoTime() + cooldownNanos));
+    logger.info("Released test account {} after {} ms", lease.account().email(),
+        System.currentTimeMillis() - lease.getLeasedAtMillis());
+  }
+
+  /**
+   * Logs the leases that were never closed, and gives their accounts back. Called at the end of
+   * the suite.
+   * @return the number of leaked leases
+   */
+  public static int releaseLeakedLeases() {
+    List<TestAccountLease> leakedLeases = new ArrayList<>(activeLeases.keySet());
+    for (TestAccountLease lease : leakedLeases) {
+      logger.error("The lease of test account {} taken by {} was never released",
+          lease.account().email(), lease.getHolder());
+      lease.close();
+    }
+    return leakedLeases.size();
+  }
+
+  /**
+   * Gets the name of the current thread and of the test it runs, if any, to find the test that
+   * holds a lease.
+   */
+  private static String getCurrentHolder() {
+    String threadName = Thread.currentThread().getName();
+    ITestResult testResult = Reporter.getCurrentTestResult();
+    return null == testResult ? threadName
+        : threadName + " (" + testResult.getMethod().getQualifiedName() + ")";
+  }
+
+  private static List<String> getHolders() {
+    List<String> holders = new ArrayList<>();
+    activeLeases.keySet().forEach(lease -> holders.add(lease.getHolder()));
+    return holders;
+  }
+
+  /**
+   * The position of a free account in the test data and the time it can be leased again.
+   */
+  private static final class FreeAccount {
+
+    private final int position;
+
+    private final long freeAtNanos;
+
+    private FreeAccount(int position, long freeAtNanos) {
+      this.position = position;
+      this.freeAtNanos = freeAtNanos;
+    }
   }
 }
@@ -0,0 +1,106 @@
+package utils;
+
+import com.aventstack.extentreports.Status;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reporter state of one test invocation: its retry count, its step counter and the report entries
+ * logged so far. Each invocation gets its own context, so parallel tests never see the state of
+ * another test, and the entries are buffered in a lock-free queue until the test finishes.
+ */
+public final class TestReportContext {
+
+  private final String testName;
+
+  private final int retryCount;
+
+  private int stepNumber = 1;
+
+  private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Constructor of the TestReportContext class.
+   * @param testName the name of the test method
+   * @param retryCount how many times the test was already retried
+   */
+  public TestReportContext(@NotNull String testName, int retryCount) {
+    this.testName = testName;
+    this.retryCount = retryCount;
+  }
+
+  public String getTestName() {
+    return testName;
+  }
+
+  public int getRetryCount() {
+    return retryCount;
+  }
+
+  public int getStepNumber() {
+    return stepNumber;
+  }
+
+  /**
+   * Prefixes the message with the current step number and moves to the next step.
+   * @param message the message of the step
+   * @return the message with its step number
+   */
+  String nextStep(String message) {
+    String messageWithStepNumber = stepNumber + " - " + message;
+    stepNumber++;
+    return messageWithStepNumber;
+  }
+
+  void addEntry(@NotNull Status status, @NotNull String message,
+                @Nullable String screenshotPath) {
+    entries.add(new Entry(status, message, screenshotPath, System.currentTimeMillis()));
+  }
+
+  /**
+   * Removes the oldest buffered entry.
+   * @return the entry, or null if there are no more entries
+   */
+  Entry pollEntry() {
+    return entries.poll();
+  }
+
+  /**
+   * A line of the test report, optionally with a screenshot, with the time it was logged at.
+   */
+  static final class Entry {
+
+    private final Status status;
+
+    private final String message;
+
+    private final String screenshotPath;
+
+    private final long timestampMillis;
+
+    private Entry(Status status, String message, String screenshotPath, long timestampMillis) {
+      this.status = status;
+      this.message = message;
+      this.screenshotPath = screenshotPath;
+      this.timestampMillis = timestampMillis;
+    }
+
+    Status getStatus() {
+      return status;
+    }
+
+    String getMessage() {
+      return message;
+    }
+
+    String getScreenshotPath() {
+      return screenshotPath;
+    }
+
+    long getTimestampMillis() {
+      return timestampMillis;
+    }
+  }
+}
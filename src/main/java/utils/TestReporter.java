@@ -3,19 +3,22 @@ package utils;
 import static driver.DriverBase.getDriver;
 
 
+import com.aventstack.extentreports.ExtentTest;
 import com.aventstack.extentreports.MediaEntityBuilder;
 import com.aventstack.extentreports.Status;
+import com.aventstack.extentreports.model.Log;
 import com.aventstack.extentreports.service.ExtentTestManager;
-import java.io.File;
-import java.io.IOException;
-import java.security.SecureRandom;
-import org.apache.commons.io.FileUtils;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
+import org.testng.ITestResult;
 
 /**
  * Utility class to log info and screenshots in the test report.
@@ -27,19 +30,40 @@ public final class TestReporter {
    */
   private static final Logger logger = LogManager.getLogger(TestReporter.class);
 
-  private static final int MAX_LENGTH_FILENAME = 15;
-  private static final RandomStringGenerator filenameGenerator =
-      new RandomStringGenerator(MAX_LENGTH_FILENAME, new SecureRandom(),
-          RandomStringGenerator.LOWERCASE);
   private static final int MAX_RETRY_COUNT = 2;
 
   /**
-   * Keeps the number of the last message displayed on the test report log of each test. Useful
-   * for tracking metrics on where in the scenario the test failed.
+   * Encodes and writes the screenshots in background threads.
    */
-  private static final ThreadLocal<Integer> threadStepNumber = ThreadLocal.withInitial(() -> 1);
+  private static final ScreenshotWriter screenshotWriter = new ScreenshotWriter();
 
-  private static int retryCount;
+  /**
+   * Names the screenshots after their content, so identical screenshots are written once.
+   */
+  private static final ScreenshotStore screenshotStore = new ScreenshotStore(
+      OutputDirectory.resolve("extent", "HtmlReport"), screenshotWriter);
+
+  /**
+   * Streams each finished test to -DoutputDir/report. -DstreamingReport=false disables it.
+   */
+  private static final StreamingReport streamingReport =
+      Boolean.parseBoolean(System.getProperty("streamingReport", "true"))
+          ? new StreamingReport(OutputDirectory.resolve("report"),
+              OutputDirectory.resolve("extent", "HtmlReport")) : null;
+
+  /**
+   * Whether the steps are also written to ExtentReport, which keeps them in memory until the end
+   * of the suite. Only with -DextentSteps=true, or when the streaming report is disabled, so the
+   * memory of the suite does not grow with its steps by default.
+   */
+  private static final boolean writeExtentSteps =
+      Boolean.getBoolean("extentSteps") || null == streamingReport;
+
+  /**
+   * Reporter state of the test running in each thread: retry count, step counter and buffered
+   * report entries. Set by startTest() and flushed to ExtentReport by finishTest().
+   */
+  private static final ThreadLocal<TestReportContext> currentContext = new ThreadLocal<>();
 
   /**
    * Private constructor to hide the implicit one.
@@ -49,28 +73,48 @@ public final class TestReporter {
   }
 
   /**
-   * Resets the step counter to 1.
+   * Starts the report of a test invocation in the current thread, with the step counter at 1.
+   * @param testName the name of the test method
+   * @param retryCount how many times the test was already retried
    */
-  public static void resetStepCounter() {
-    logger.debug("The step counter was reset to 1");
-    threadStepNumber.set(1);
+  public static void startTest(@NotNull String testName, int retryCount) {
+    logger.debug("Starting the report of {}, the retry count value is {}", testName, retryCount);
+    currentContext.set(new TestReportContext(testName, retryCount));
   }
 
   /**
-   * Gets the number of the current step to be logged.
+   * Writes the entries buffered by the test running in the current thread to its ExtentReport
+   * test and to the streaming report, and clears the reporter state of the thread.
+   * @param result the result of the test
    */
-  public static int getCurrentStepNumber() {
-    return threadStepNumber.get();
+  public static void finishTest(@NotNull ITestResult result) {
+    TestReportContext context = currentContext.get();
+    if (null == context) {
+      return;
+    }
+    currentContext.remove();
+    ExtentTest extentTest = writeExtentSteps ? ExtentTestManager.getTest() : null;
+    List<TestReportContext.Entry> entries = new ArrayList<>();
+    TestReportContext.Entry entry = context.pollEntry();
+    while (null != entry) {
+      if (null != extentTest) {
+        writeEntry(extentTest, entry.getStatus(), entry.getMessage(), entry.getScreenshotPath(),
+            entry.getTimestampMillis());
+      }
+      entries.add(entry);
+      entry = context.pollEntry();
+    }
+    if (null != streamingReport) {
+      streamingReport.append(StreamingReport.createTestEvent(context, result, entries));
+    }
   }
 
   /**
-   * Sets the current retry counter.
-   *
-   * @param count integer
+   * Gets the number of the current step to be logged.
    */
-  public static void setRetryCount(int count) {
-    logger.debug("The retry count value is {}", count);
-    retryCount = count;
+  public static int getCurrentStepNumber() {
+    TestReportContext context = currentContext.get();
+    return null == context ? 1 : context.getStepNumber();
   }
 
   /**
@@ -79,60 +123,89 @@ public final class TestReporter {
   public static void addScreenshotToReport(String message) {
     logger.debug(message);
     WebDriver webDriver = getDriver();
+    TestReportContext context = currentContext.get();
 
-    if (retryCount == MAX_RETRY_COUNT) {
+    if (null != context && context.getRetryCount() == MAX_RETRY_COUNT) {
       logger.debug("Taking screenshot");
-      File scrFile = ((TakesScreenshot) webDriver).getScreenshotAs(OutputType.FILE);
-      String projectPath = System.getProperty("user.dir");
-      logger.debug("Project path: {}", projectPath);
-      String extentReportPath = projectPath + "/build/extent/HtmlReport/";
-      String fileName = filenameGenerator.nextString() + ".jpeg";
-      String fullFilenamePath = extentReportPath + fileName;
-      logger.debug("Full path screenshot file name: {}", fullFilenamePath);
-
-      try {
-        FileUtils.copyFile(scrFile, new File(fullFilenamePath));
-      } catch (IOException e) {
-        logger.error("Exception creating the screenshot file", e);
+      // only the capture runs on the test thread, the encoding and the write are queued
+      byte[] screenshot = ((TakesScreenshot) webDriver).getScreenshotAs(OutputType.BYTES);
+      String fileName = screenshotStore.store(screenshot);
+      logger.debug("Screenshot file name: {}", fileName);
+
+      if (null == fileName) {
+        addInfoToReport(message + " (screenshot dropped, the screenshot queue is full)");
         return;
       }
-
-      int currentStep = threadStepNumber.get();
-      String messageWithStepNumber = Integer.toString(currentStep) + " - " + message;
-      currentStep++;
-      threadStepNumber.set(currentStep);
-      ExtentTestManager.getTest().log(Status.INFO, messageWithStepNumber
-              + " ------ Screenshot: ",
-          MediaEntityBuilder.createScreenCaptureFromPath(fileName, fileName).build());
+      addToReport(Status.INFO, message + " ------ Screenshot: ", fileName);
     } else {
       logger.info("Adding info to report without screenshot");
       addInfoToReport(message);
     }
   }
 
+  /**
+   * Waits until the queued screenshots are written to disk. Called once at the end of the suite.
+   */
+  public static void finishScreenshots() {
+    screenshotWriter.finish();
+    logger.info("Duplicated screenshots not written: {}", screenshotStore.getDuplicateCount());
+  }
+
+  /**
+   * Closes the streaming report. Called once at the end of the suite.
+   */
+  public static void finishReport() {
+    if (null != streamingReport) {
+      streamingReport.close();
+    }
+  }
+
   /**
    * Logs info to the Extent test report and to Log4j2.
    */
   public static void addInfoToReport(String message) {
-    String messageWithStepNumber = addMessageToReport(message);
-    ExtentTestManager.getTest().log(Status.INFO, messageWithStepNumber);
+    logger.debug(message);
+    addToReport(Status.INFO, message, null);
   }
 
   /**
    * Logs error to the Extent test report and to Log4j2.
    */
   public static void addErrorToReport(String message) {
-    String messageWithStepNumber = addMessageToReport(message);
-    ExtentTestManager.getTest().log(Status.FAIL, messageWithStepNumber);
+    logger.debug(message);
+    addToReport(Status.FAIL, message, null);
   }
 
-  @NotNull
-  private static String addMessageToReport(String message) {
-    logger.debug(message);
-    int currentStep = threadStepNumber.get();
-    String messageWithStepNumber = currentStep + " - " + message;
-    currentStep++;
-    threadStepNumber.set(currentStep);
-    return messageWithStepNumber;
+  /**
+   * Buffers the entry with its step number in the context of the current test. Entries logged
+   * outside of a test are written straight to ExtentReport.
+   */
+  private static void addToReport(@NotNull Status status, @NotNull String message,
+                                  @Nullable String screenshotPath) {
+    TestReportContext context = currentContext.get();
+    if (null == context) {
+      writeEntry(ExtentTestManager.getTest(), status, message, screenshotPath,
+          System.currentTimeMillis());
+      return;
+    }
+    context.addEntry(status, context.nextStep(message), screenshotPath);
+  }
+
+  /**
+   * Logs the entry to the Extent test with the time it was logged at, instead of the time the
+   * buffered entries are written.
+   */
+  private static void writeEntry(ExtentTest extentTest, Status status, String message,
+                                 @Nullable String screenshotPath, long timestampMillis) {
+    if (null == screenshotPath) {
+      extentTest.log(status, message);
+    } else {
+      extentTest.log(status, message, MediaEntityBuilder
+          .createScreenCaptureFromPath(screenshotPath, screenshotPath).build());
+    }
+    List<Log> logs = extentTest.getModel().getLogs();
+    if (!logs.isEmpty()) {
+      logs.get(logs.size() - 1).setTimestamp(new Date(timestampMillis));
+    }
   }
 }
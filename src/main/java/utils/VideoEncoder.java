@@ -0,0 +1,274 @@
+package utils;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import utils.FailureVideoRecorder.Frame;
+
+/**
+ * Encodes the frames of a FailureVideoRecorder. With ffmpeg (-Dffmpeg, found in the PATH by
+ * default) the video is an MP4 (H.264) or, with -DvideoFormat=webm, a WebM (VP9). Without ffmpeg
+ * it falls back to an animated GIF written with ImageIO, so a failure always gets its video. Each
+ * frame lasts until the next one was captured.
+ */
+final class VideoEncoder {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(VideoEncoder.class);
+
+  private static final String FFMPEG = System.getProperty("ffmpeg", "ffmpeg");
+
+  private static final String VIDEO_FORMAT =
+      System.getProperty("videoFormat", "mp4").toLowerCase(Locale.ROOT);
+
+  private static final int TIMEOUT_TO_ENCODE = 60;
+
+  private static final int GIF_MAX_WIDTH = 960;
+
+  private static final float JPEG_QUALITY = 0.7f;
+
+  /**
+   * The shortest frame duration most GIF viewers respect.
+   */
+  private static final long MIN_FRAME_MILLIS = 20;
+
+  private static Boolean ffmpegAvailable;
+
+  /**
+   * Private constructor to hide the implicit one.
+   */
+  private VideoEncoder() {
+
+  }
+
+  /**
+   * Encodes the frames to a video file.
+   * @param frames the frames, the oldest first
+   * @param frameInterval the duration of the last frame, in milliseconds
+   * @param directory the directory of the video
+   * @param name the name of the video file, without extension
+   * @return the video file
+   * @throws IOException if the video cannot be encoded
+   */
+  static Path encode(@NotNull List<Frame> frames, long frameInterval, @NotNull Path directory,
+                     @NotNull String name) throws IOException {
+    Files.createDirectories(directory);
+    List<Long> durations = getDurations(frames, frameInterval);
+    if (isFfmpegAvailable()) {
+      return encodeWithFfmpeg(frames, durations, directory.resolve(name + "." + VIDEO_FORMAT));
+    }
+    return encodeGif(frames, durations, directory.resolve(name + ".gif"));
+  }
+
+  private static synchronized boolean isFfmpegAvailable() {
+    if (null == ffmpegAvailable) {
+      try {
+        Process process = new ProcessBuilder(FFMPEG, "-version")
+            .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        ffmpegAvailable = process.waitFor(10, TimeUnit.SECONDS) && process.exitValue() == 0;
+      } catch (IOException e) {
+        ffmpegAvailable = false;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+      if (!ffmpegAvailable) {
+        logger.info("{} not found, the videos of the failed tests are animated GIFs", FFMPEG);
+      }
+    }
+    return ffmpegAvailable;
+  }
+
+  private static List<Long> getDurations(List<Frame> frames, long frameInterval) {
+    List<Long> durations = new ArrayList<>(frames.size());
+    for (int i = 0; i < frames.size(); i++) {
+      long duration = i + 1 < frames.size() ? frames.get(i + 1).getTimestampMillis()
+          - frames.get(i).getTimestampMillis() : frameInterval;
+      durations.add(Math.max(MIN_FRAME_MILLIS, duration));
+    }
+    return durations;
+  }
+
+  /**
+   * Writes the frames to a temporary directory and encodes them with the concat demuxer of
+   * ffmpeg, which gives each frame its own duration.
+   */
+  private static Path encodeWithFfmpeg(List<Frame> frames, List<Long> durations, Path video)
+      throws IOException {
+    Path frameDirectory = Files.createTempDirectory("video-frames");
+    try {
+      StringBuilder frameList = new StringBuilder("ffconcat version 1.0\n");
+      String fileName = null;
+      for (int i = 0; i < frames.size(); i++) {
+        fileName = String.format(Locale.ROOT, "frame-%04d.jpeg", i);
+        Files.write(frameDirectory.resolve(fileName), frames.get(i).getImage());
+        frameList.append("file ").append(fileName).append('\n')
+            .append(String.format(Locale.ROOT, "duration %.3f%n", durations.get(i) / 1000.0));
+      }
+      // the duration of the last file is ignored unless it is listed twice
+      frameList.append("file ").append(fileName).append('\n');
+      Path listFile = frameDirectory.resolve("frames.txt");
+      Files.write(listFile, frameList.toString().getBytes(StandardCharsets.UTF_8));
+
+      List<String> command = new ArrayList<>(List.of(FFMPEG, "-y", "-loglevel", "error",
+          "-f", "concat", "-safe", "0", "-i", listFile.toString(),
+          // H.264 and VP9 need even dimensions
+          "-vf", "scale=trunc(iw/2)*2:trunc(ih/2)*2,format=yuv420p"));
+      if ("webm".equals(VIDEO_FORMAT)) {
+        command.addAll(List.of("-c:v", "libvpx-vp9", "-deadline", "realtime", "-b:v", "0",
+            "-crf", "40"));
+      } else {
+        command.addAll(List.of("-c:v", "libx264", "-preset", "veryfast", "-crf", "28",
+            "-movflags", "+faststart"));
+      }
+      command.add(video.toAbsolutePath().toString());
+      Path ffmpegLog = frameDirectory.resolve("ffmpeg.log");
+      Process process = new ProcessBuilder(command).redirectErrorStream(true)
+          .redirectOutput(ffmpegLog.toFile()).start();
+      if (!process.waitFor(TIMEOUT_TO_ENCODE, TimeUnit.SECONDS)) {
+        process.destroyForcibly();
+        throw new IOException("ffmpeg did not encode " + video + " in " + TIMEOUT_TO_ENCODE
+            + " seconds");
+      }
+      if (process.exitValue() != 0) {
+        throw new IOException("ffmpeg failed to encode " + video + ": "
+            + new String(Files.readAllBytes(ffmpegLog), StandardCharsets.UTF_8).trim());
+      }
+      return video;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while encoding " + video, e);
+    } finally {
+      FileUtils.deleteQuietly(frameDirectory.toFile());
+    }
+  }
+
+  private static Path encodeGif(List<Frame> frames, List<Long> durations, Path video)
+      throws IOException {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+    try (ImageOutputStream output = ImageIO.createImageOutputStream(video.toFile())) {
+      writer.setOutput(output);
+      writer.prepareWriteSequence(null);
+      for (int i = 0; i < frames.size(); i++) {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(frames.get(i).getImage()));
+        if (null == image) {
+          logger.debug("Unable to decode the frame {} of {}", i, video.getFileName());
+          continue;
+        }
+        image = toRgb(image, GIF_MAX_WIDTH);
+        IIOMetadata metadata = writer.getDefaultImageMetadata(
+            ImageTypeSpecifier.createFromRenderedImage(image), null);
+        setGifFrameMetadata(metadata, durations.get(i), i == 0);
+        writer.writeToSequence(new IIOImage(image, null, metadata), null);
+      }
+      writer.endWriteSequence();
+    } finally {
+      writer.dispose();
+    }
+    return video;
+  }
+
+  /**
+   * Sets the duration of a GIF frame, and makes the first frame loop the animation.
+   */
+  private static void setGifFrameMetadata(IIOMetadata metadata, long durationMillis,
+                                          boolean firstFrame) throws IOException {
+    String format = metadata.getNativeMetadataFormatName();
+    IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+    IIOMetadataNode control = getChild(root, "GraphicControlExtension");
+    control.setAttribute("disposalMethod", "none");
+    control.setAttribute("userInputFlag", "FALSE");
+    control.setAttribute("transparentColorFlag", "FALSE");
+    control.setAttribute("transparentColorIndex", "0");
+    control.setAttribute("delayTime", Long.toString(Math.max(2, durationMillis / 10)));
+    if (firstFrame) {
+      IIOMetadataNode extension = new IIOMetadataNode("ApplicationExtension");
+      extension.setAttribute("applicationID", "NETSCAPE");
+      extension.setAttribute("authenticationCode", "2.0");
+      extension.setUserObject(new byte[] {1, 0, 0});
+      getChild(root, "ApplicationExtensions").appendChild(extension);
+    }
+    metadata.setFromTree(format, root);
+  }
+
+  private static IIOMetadataNode getChild(IIOMetadataNode parent, String name) {
+    for (int i = 0; i < parent.getLength(); i++) {
+      if (parent.item(i).getNodeName().equalsIgnoreCase(name)) {
+        return (IIOMetadataNode) parent.item(i);
+      }
+    }
+    IIOMetadataNode child = new IIOMetadataNode(name);
+    parent.appendChild(child);
+    return child;
+  }
+
+  /**
+   * Downscales the image to the width and drops the alpha channel.
+   */
+  private static BufferedImage toRgb(BufferedImage image, int maxWidth) {
+    double scale = Math.min(1.0, (double) maxWidth / image.getWidth());
+    int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+    int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+    BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = rgb.createGraphics();
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.drawImage(image, 0, 0, width, height, null);
+    } finally {
+      graphics.dispose();
+    }
+    return rgb;
+  }
+
+  /**
+   * Downscales a screenshot to the width and encodes it as JPEG, to keep the frames of the ring
+   * buffer small.
+   * @param screenshot the PNG screenshot returned by the browser
+   * @param maxWidth the maximum width of the frame
+   * @return the JPEG frame, or null if the screenshot cannot be decoded
+   * @throws IOException if the frame cannot be encoded
+   */
+  static byte[] toJpegFrame(@NotNull byte[] screenshot, int maxWidth) throws IOException {
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(screenshot));
+    if (null == image) {
+      return null;
+    }
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    param.setCompressionQuality(JPEG_QUALITY);
+    ByteArrayOutputStream frame = new ByteArrayOutputStream();
+    try (ImageOutputStream output = ImageIO.createImageOutputStream(frame)) {
+      writer.setOutput(output);
+      writer.write(null, new IIOImage(toRgb(image, maxWidth), null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return frame.toByteArray();
+  }
+}
@@ -0,0 +1,65 @@
+package base;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+
+/**
+ * Orders the test methods longest first (longest processing time scheduling), so the threads of
+ * the suite pick the slow tests first and the short ones fill the gaps at the end, instead of a
+ * slow test starting last and setting the duration of the whole run. The expected duration of a
+ * method includes its retries, so the tests that are likely to fail start early and their retries
+ * overlap with the other tests. The durations and retry rates come from the TestHistory.
+ */
+public class LongestFirstInterceptor implements IMethodInterceptor {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(LongestFirstInterceptor.class);
+
+  @Override
+  public List<IMethodInstance> intercept(@NotNull List<IMethodInstance> methods,
+                                         @NotNull ITestContext context) {
+    TestHistory history = TestHistory.getInstance();
+    List<IMethodInstance> orderedMethods = new ArrayList<>(methods);
+    orderedMethods.sort(Comparator
+        .comparingLong((IMethodInstance method) ->
+            ShardInterceptor.getExpectedDurationMillis(history, method))
+        .reversed()
+        .thenComparing(ShardInterceptor::getName));
+
+    int threads = Math.max(1, context.getCurrentXmlTest().getThreadCount());
+    logger.info("Running {} test methods longest first on {} threads, expected duration {} ms",
+        orderedMethods.size(), threads, getExpectedMakespan(history, orderedMethods, threads));
+    return orderedMethods;
+  }
+
+  /**
+   * Simulates the threads taking the methods in order, each one taking the next method when it
+   * finishes the previous one.
+   * @return the expected duration of the run in milliseconds
+   */
+  private static long getExpectedMakespan(TestHistory history, List<IMethodInstance> methods,
+                                          int threads) {
+    PriorityQueue<Long> threadEndTimes = new PriorityQueue<>();
+    for (int i = 0; i < threads; i++) {
+      threadEndTimes.add(0L);
+    }
+    long makespan = 0;
+    for (IMethodInstance method : methods) {
+      long endTime = threadEndTimes.poll()
+          + ShardInterceptor.getExpectedDurationMillis(history, method);
+      makespan = Math.max(makespan, endTime);
+      threadEndTimes.add(endTime);
+    }
+    return makespan;
+  }
+}
@@ -0,0 +1,84 @@
+package base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+
+/**
+ * Keeps only the test methods of the shard run by this JVM, when the suite is split in
+ * -DshardCount shards (see the shardedTest task of build.gradle). The methods of each group are
+ * spread over the shards longest first, each one going to the shard with the lowest expected
+ * duration so far, using the durations and retry rates of the TestHistory. Every JVM computes the
+ * same assignment from the same history, and keeps the methods of -DshardIndex.
+ */
+public class ShardInterceptor implements IMethodInterceptor {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(ShardInterceptor.class);
+
+  @Override
+  public List<IMethodInstance> intercept(@NotNull List<IMethodInstance> methods,
+                                         ITestContext context) {
+    final int shardCount = Integer.getInteger("shardCount", 1);
+    final int shardIndex = Integer.getInteger("shardIndex", 0);
+    if (shardCount <= 1) {
+      return methods;
+    }
+    TestHistory history = TestHistory.getInstance();
+    Map<String, List<IMethodInstance>> methodsByGroup = new TreeMap<>();
+    for (IMethodInstance method : methods) {
+      methodsByGroup.computeIfAbsent(getGroupKey(method), group -> new ArrayList<>()).add(method);
+    }
+
+    long[] shardDurations = new long[shardCount];
+    List<IMethodInstance> shardMethods = new ArrayList<>();
+    methodsByGroup.values().forEach(groupMethods -> {
+      groupMethods.sort(Comparator
+          .comparingLong((IMethodInstance method) -> getExpectedDurationMillis(history, method))
+          .reversed()
+          .thenComparing(ShardInterceptor::getName));
+      for (IMethodInstance method : groupMethods) {
+        int shard = 0;
+        for (int i = 1; i < shardCount; i++) {
+          if (shardDurations[i] < shardDurations[shard]) {
+            shard = i;
+          }
+        }
+        shardDurations[shard] += getExpectedDurationMillis(history, method);
+        if (shard == shardIndex) {
+          shardMethods.add(method);
+        }
+      }
+    });
+    logger.info("Shard {} of {} runs {} of {} test methods, expected duration {} ms",
+        shardIndex + 1, shardCount, shardMethods.size(), methods.size(),
+        shardDurations[shardIndex]);
+    return shardMethods;
+  }
+
+  static String getName(@NotNull IMethodInstance method) {
+    return method.getMethod().getQualifiedName();
+  }
+
+  static long getExpectedDurationMillis(@NotNull TestHistory history,
+                                        @NotNull IMethodInstance method) {
+    return history.getExpectedDurationMillis(getName(method), TestBase.RetryAnalyzer.RETRY_LIMIT);
+  }
+
+  private static String getGroupKey(IMethodInstance method) {
+    String[] groups = method.getMethod().getGroups().clone();
+    Arrays.sort(groups);
+    return String.join(",", groups);
+  }
+}
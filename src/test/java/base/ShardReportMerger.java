@@ -0,0 +1,176 @@
+package base;
+
+import com.aventstack.extentreports.ExtentReports;
+import com.aventstack.extentreports.reporter.ExtentSparkReporter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import metrics.LatencyHistogram;
+import metrics.MetricsExporter;
+import metrics.StepMetrics.StepKey;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import utils.OutputDirectory;
+import utils.StreamingReport;
+
+/**
+ * Merges the outputs of the JVMs of a sharded run (see the shardedTest task of build.gradle) into
+ * the output directory: the Extent reports, from the JSON archive of each shard, the streaming
+ * reports, the screenshots and failure videos, the step timings and the test history. Each
+ * shard writes to -DoutputDir/shards/[index].
+ */
+public final class ShardReportMerger {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(ShardReportMerger.class);
+
+  /**
+   * The files of the Extent report directory that the reports link to: the screenshots and the
+   * videos of the failed tests, in each format of VideoEncoder.
+   */
+  private static final List<String> MEDIA_EXTENSIONS = List.of(".jpeg", ".mp4", ".webm", ".gif");
+
+  /**
+   * Private constructor to hide the implicit one.
+   */
+  private ShardReportMerger() {
+
+  }
+
+  /**
+   * Merges the outputs of all the shards.
+   * @param args not used
+   * @throws IOException if a shard output cannot be read or the merged output cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    List<Path> shardDirectories = getShardDirectories(OutputDirectory.resolve("shards"));
+    logger.info("Merging the outputs of {} shards", shardDirectories.size());
+    mergeReports(shardDirectories, OutputDirectory.resolve("extent", "HtmlReport"));
+    mergeStreamingReports(shardDirectories, OutputDirectory.resolve("report"));
+    mergeMetrics(shardDirectories, OutputDirectory.resolve("metrics"));
+    mergeHistory(shardDirectories);
+  }
+
+  /**
+   * Gets the path of the Extent JSON archive written by a shard.
+   * @param shardDirectory the output directory of the shard
+   * @return Path
+   */
+  public static Path getJsonArchive(@NotNull Path shardDirectory) {
+    return shardDirectory.resolve(Path.of("extent", "json", "extent.json"));
+  }
+
+  private static List<Path> getShardDirectories(Path shardsDirectory) throws IOException {
+    if (!Files.isDirectory(shardsDirectory)) {
+      return new ArrayList<>();
+    }
+    try (Stream<Path> directories = Files.list(shardsDirectory)) {
+      return directories.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Builds one Extent report from the JSON archives of the shards, and copies the screenshots and
+   * the failure videos next to it. The screenshots are named after their content and the videos
+   * after their test and time, so files with the same name are the same file and are copied once.
+   */
+  private static void mergeReports(List<Path> shardDirectories, Path reportDirectory)
+      throws IOException {
+    ExtentReports extent = new ExtentReports();
+    extent.attachReporter(new ExtentSparkReporter(reportDirectory.resolve("index.html")
+        .toString()));
+    for (Path shardDirectory : shardDirectories) {
+      Path jsonArchive = getJsonArchive(shardDirectory);
+      if (Files.exists(jsonArchive)) {
+        extent.createDomainFromJsonArchive(jsonArchive.toString());
+      } else {
+        logger.warn("No Extent report in {}", shardDirectory);
+      }
+      copyMedia(shardDirectory.resolve(Path.of("extent", "HtmlReport")), reportDirectory);
+    }
+    extent.flush();
+  }
+
+  /**
+   * Builds one streaming report from the events of the shards, one line at a time. The screenshots
+   * are the ones copied next to the merged Extent report.
+   */
+  private static void mergeStreamingReports(List<Path> shardDirectories, Path reportDirectory)
+      throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    try (StreamingReport report = new StreamingReport(reportDirectory,
+        OutputDirectory.resolve("extent", "HtmlReport"))) {
+      for (Path shardDirectory : shardDirectories) {
+        Path events = shardDirectory.resolve(Path.of("report", StreamingReport.EVENTS_FILE));
+        if (!Files.exists(events)) {
+          logger.warn("No streaming report in {}", shardDirectory);
+          continue;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(events, StandardCharsets.UTF_8)) {
+          String line = reader.readLine();
+          while (null != line) {
+            if (!line.isBlank()) {
+              report.append(mapper.readTree(line));
+            }
+            line = reader.readLine();
+          }
+        }
+      }
+    }
+  }
+
+  private static void copyMedia(Path source, Path target) throws IOException {
+    if (!Files.isDirectory(source)) {
+      return;
+    }
+    Files.createDirectories(target);
+    List<Path> mediaFiles;
+    try (Stream<Path> files = Files.list(source)) {
+      mediaFiles = files.filter(file -> MEDIA_EXTENSIONS.stream()
+          .anyMatch(extension -> file.toString().endsWith(extension)))
+          .collect(Collectors.toList());
+    }
+    for (Path mediaFile : mediaFiles) {
+      Path targetFile = target.resolve(mediaFile.getFileName());
+      if (!Files.exists(targetFile)) {
+        Files.copy(mediaFile, targetFile);
+      }
+    }
+  }
+
+  private static void mergeMetrics(List<Path> shardDirectories, Path metricsDirectory)
+      throws IOException {
+    Map<StepKey, LatencyHistogram> histograms = new TreeMap<>();
+    for (Path shardDirectory : shardDirectories) {
+      MetricsExporter.load(shardDirectory.resolve("metrics")).forEach((key, histogram) ->
+          histograms.merge(key, histogram, (merged, other) -> {
+            merged.add(other);
+            return merged;
+          }));
+    }
+    MetricsExporter.export(histograms, metricsDirectory);
+  }
+
+  /**
+   * Updates the history file with the runs of each shard, so the next run is balanced with them.
+   */
+  private static void mergeHistory(List<Path> shardDirectories) {
+    TestHistory history = TestHistory.load(TestHistory.getHistoryFile());
+    for (Path shardDirectory : shardDirectories) {
+      history.merge(TestHistory.load(TestHistory.getShardHistoryFile(shardDirectory)));
+    }
+    history.save(TestHistory.getHistoryFile());
+  }
+}
@@ -0,0 +1,103 @@
+package base;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Local copy of the pages under test, served from test-data/stub-site, so the suite can run
+ * offline with -Denv=stub (see config/config-stub.yaml). It counts the requests of each path, which
+ * tells if the resources denied by the network settings were loaded or not.
+ */
+public final class StubSite {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(StubSite.class);
+
+  private static final int DEFAULT_PORT = 8765;
+
+  private static final Path ROOT = Paths.get("test-data", "stub-site");
+
+  private static final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+
+  private static HttpServer server;
+
+  /**
+   * Private constructor to hide the implicit one.
+   */
+  private StubSite() {
+
+  }
+
+  /**
+   * Starts serving the stub site on -DstubSitePort (8765 by default), unless it is running.
+   * @throws IOException if the port is not available
+   */
+  public static synchronized void start() throws IOException {
+    if (null != server) {
+      return;
+    }
+    int port = Integer.getInteger("stubSitePort", DEFAULT_PORT);
+    server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+    server.createContext("/", StubSite::serve);
+    server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "stub-site");
+      thread.setDaemon(true);
+      return thread;
+    }));
+    server.start();
+    logger.info("Stub site serving {} on port {}", ROOT.toAbsolutePath(), port);
+  }
+
+  /**
+   * Stops the stub site.
+   */
+  public static synchronized void stop() {
+    if (null != server) {
+      server.stop(0);
+      server = null;
+      logger.info("Stub site requests: {}", requestCounts);
+    }
+  }
+
+  /**
+   * Gets how many times a path was requested.
+   * @param path the path, like /static/logo.png
+   * @return long
+   */
+  public static long getRequestCount(@NotNull String path) {
+    AtomicLong count = requestCounts.get(path);
+    return null == count ? 0 : count.get();
+  }
+
+  private static void serve(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath();
+    requestCounts.computeIfAbsent(path, key -> new AtomicLong()).incrementAndGet();
+    Path file = ROOT.resolve(path.substring(1)).normalize();
+    try (OutputStream body = exchange.getResponseBody()) {
+      if (!file.startsWith(ROOT) || !Files.isRegularFile(file)) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+      String contentType = Files.probeContentType(file);
+      exchange.getResponseHeaders().add("Content-Type",
+          null == contentType ? "application/octet-stream" : contentType);
+      exchange.sendResponseHeaders(200, Files.size(file));
+      Files.copy(file, body);
+    }
+  }
+}
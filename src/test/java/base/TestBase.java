@@ -3,8 +3,12 @@ package base;
 import com.aventstack.extentreports.Status;
 import com.aventstack.extentreports.service.ExtentTestManager;
 import com.aventstack.extentreports.testng.listener.ExtentITestListenerAdapter;
+import driver.BrowserType;
 import driver.DriverBase;
+import driver.ExecutionProfile;
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.file.Path;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.ThreadContext;
@@ -12,11 +16,16 @@ import org.jetbrains.annotations.NotNull;
 import org.testng.IRetryAnalyzer;
 import org.testng.ITestResult;
 import org.testng.annotations.AfterMethod;
+import org.testng.annotations.AfterSuite;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeSuite;
 import org.testng.annotations.Listeners;
+import utils.FailureVideoRecorder;
+import utils.OutputDirectory;
 import utils.TestReporter;
 
-@Listeners({ExtentITestListenerAdapter.class})
+@Listeners({ExtentITestListenerAdapter.class, TestHistoryListener.class, ShardInterceptor.class,
+    LongestFirstInterceptor.class})
 public class TestBase extends DriverBase {
 
   /**
@@ -24,7 +33,24 @@ public class TestBase extends DriverBase {
    */
   protected static final Logger logger = LogManager.getLogger(TestBase.class);
 
-  protected int retryCounter;
+  /**
+   * Starts the local stub of the site under test when the suite runs offline with -Denv=stub.
+   * @throws IOException if the stub site cannot be started
+   */
+  @BeforeSuite(alwaysRun = true)
+  public static void startStubSite() throws IOException {
+    if ("stub".equals(System.getProperty("env"))) {
+      StubSite.start();
+    }
+  }
+
+  /**
+   * Stops the local stub of the site under test.
+   */
+  @AfterSuite(alwaysRun = true)
+  public static void stopStubSite() {
+    StubSite.stop();
+  }
 
   /**
    * Logs the start of each test.
@@ -42,66 +68,96 @@ public class TestBase extends DriverBase {
     */
     ThreadContext.put("threadId", Thread.currentThread().getName());
     
-    // resets the test report step counter to 1
-    TestReporter.resetStepCounter();
-    logger.info("-------- Starting test " + method.getName() + " --------");
+    logger.info("-------- Starting test {} --------", method.getName());
 
+    int retryCounter = 0;
     IRetryAnalyzer retry = testResult.getMethod().getRetryAnalyzer(testResult);
     if (retry instanceof RetryAnalyzer) {
       // Check if the retry analyser's retry count was greater than zero.
       // If yes, then its a retried method
       retryCounter = ((RetryAnalyzer) retry).getRetryCount();
-      TestReporter.setRetryCount(retryCounter);
     }
+    // starts the report of this invocation with its own retry count and step counter at 1
+    TestReporter.startTest(method.getName(), retryCounter);
   }
 
   /**
-   * Logs the end of each test and the test result in ExtentReport.>.
+   * Logs the end of each test and the test result in ExtentReport.>. The report entries buffered
+   * by the test are written to ExtentReport at the end, without blocking the other threads.
    * @param result the test result after the execution
    */
   @AfterMethod(alwaysRun = true)
-  public synchronized void finishTest(@NotNull ITestResult result) {
-    // Write a Test Report log to identify which thread the test ran on
-    TestReporter.addInfoToReport("The test logs have been saved in: "
-        + Thread.currentThread().getName() + ".log");
-
-    // Write logs and take screenshot if failed or skipped
-    if (result.getStatus() == ITestResult.FAILURE) {
-      TestReporter.addScreenshotToReport("Screenshot of failed test");
-      logger.info("Test failed");
-      logger.error(result.getThrowable());
-    } else if (result.getStatus() == ITestResult.SKIP) {
-      TestReporter.addScreenshotToReport("Screenshot of skipped test");
-      logger.info("Test failure skipped, retry test");
-      logger.debug(result.getThrowable());
-    } else if (result.getStatus() == ITestResult.SUCCESS) {
-      logger.info("Test passed");
-    } else {
-      logger.info("Test result: {}", result.getStatus());
+  public void finishTest(@NotNull ITestResult result) {
+    Path video = null;
+    try {
+      // Write a Test Report log to identify which thread the test ran on
+      TestReporter.addInfoToReport("The test logs have been saved in: "
+          + OutputDirectory.resolve("logs", Thread.currentThread().getName() + ".log"));
+      addExecutionProfileToReport();
+
+      // Write logs and take screenshot if failed or skipped
+      if (result.getStatus() == ITestResult.FAILURE) {
+        TestReporter.addScreenshotToReport("Screenshot of failed test");
+        logger.error("Test failed", result.getThrowable());
+      } else if (result.getStatus() == ITestResult.SKIP) {
+        TestReporter.addScreenshotToReport("Screenshot of skipped test");
+        logger.info("Test failure skipped, retry test");
+        logger.debug("Failure of the skipped test", result.getThrowable());
+      } else if (result.getStatus() == ITestResult.SUCCESS) {
+        logger.info("Test passed");
+      } else {
+        logger.info("Test result: {}", result.getStatus());
+      }
+
+      // The video of the last seconds of the test is only encoded when it failed or was skipped
+      video = FailureVideoRecorder.finish(result, result.getName());
+      if (null != video) {
+        TestReporter.addInfoToReport("Video of the test: " + video.getFileName());
+      }
+    } finally {
+      TestReporter.finishTest(result);
     }
-    // Only adding the video to the report when the test fails.
-    if (!result.isSuccess()) {
-      addVideoToReport();
+    if (null != video) {
+      addVideoToReport(video);
     }
-    logger.info("-------- Finished test " + result.getName() + " --------");
+    logger.info("-------- Finished test {} --------", result.getName());
+  }
+
+  /**
+   * Adds the browser, its execution profile and the arguments it was started with to the test
+   * report. The report can be filtered by browser and profile in its device view.
+   */
+  public static void addExecutionProfileToReport() {
+    BrowserType browserType = getBrowserType();
+    ExecutionProfile executionProfile = getExecutionProfile();
+    ExtentTestManager.getTest().assignDevice(browserType + " " + executionProfile.getName());
+    TestReporter.addInfoToReport("Browser: " + browserType + ", execution profile: "
+        + executionProfile.getName() + ", arguments: "
+        + browserType.getArguments(executionProfile));
   }
 
   /**
    * Adds the video record at the end of the test report.
+   * @param video the video written next to the report by FailureVideoRecorder
    */
-  public static void addVideoToReport() {
+  public static void addVideoToReport(@NotNull Path video) {
     logger.info("Adding video to report...");
 
-    String videoFileName = getDriver().getSessionId() + ".mp4";
+    String videoFileName = video.getFileName().toString();
     logger.info("The video name is: {}", videoFileName);
 
-    // add a link to the video in ExtentReport
-    String videoHtmlCode = String.format(
-        "<video width='720' height='480' controls>\n"
-            + "  <source src='%s' type='video/mp4'>\n"
-            + "  Your browser does not support the video tag.\n"
-            + "</video>",
-        videoFileName);
+    // add the video to ExtentReport, as an image when ffmpeg was not available
+    String videoHtmlCode;
+    if (videoFileName.endsWith(".gif")) {
+      videoHtmlCode = String.format("<img width='720' src='%s'>", videoFileName);
+    } else {
+      videoHtmlCode = String.format(
+          "<video width='720' height='480' controls>\n"
+              + "  <source src='%s' type='video/%s'>\n"
+              + "  Your browser does not support the video tag.\n"
+              + "</video>",
+          videoFileName, videoFileName.substring(videoFileName.lastIndexOf('.') + 1));
+    }
 
     ExtentTestManager.getTest().log(Status.INFO, "The video name is: " + videoFileName);
     ExtentTestManager.getTest().log(Status.INFO, videoHtmlCode);
@@ -115,7 +171,7 @@ public class TestBase extends DriverBase {
     private static final Logger logger = LogManager.getLogger(RetryAnalyzer.class);
 
     private int counter;
-    private static final int RETRY_LIMIT = 2;
+    static final int RETRY_LIMIT = 2;
 
     public RetryAnalyzer() {
       logger.debug("Retry analyzer constructor");
@@ -128,8 +184,8 @@ public class TestBase extends DriverBase {
     @Override
     public boolean retry(ITestResult result) {
       if (counter < RETRY_LIMIT) {
-        logger.info("Going to retry test case: " + result.getMethod().getMethodName()
-            + ", " + (counter + 1) + " out of " + RETRY_LIMIT);
+        logger.info("Going to retry test case: {}, {} out of {}",
+            result.getMethod().getMethodName(), counter + 1, RETRY_LIMIT);
         counter++;
         return true;
       }
@@ -0,0 +1,215 @@
+package base;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Local history of the duration and retries of each test method, used to balance the shards and
+ * to schedule the longest tests first. The history is read from -DtestHistory (.test-history.json
+ * by default) and the runs of the suite are written to -DtestHistoryOut, which defaults to the same
+ * file. The JVMs of a sharded run write their own file, merged by ShardReportMerger.
+ */
+public final class TestHistory {
+
+  /**
+   * The logger.
+   */
+  private static final Logger logger = LogManager.getLogger(TestHistory.class);
+
+  private static final String DEFAULT_HISTORY_FILE = ".test-history.json";
+
+  /**
+   * Duration assumed for the methods without history.
+   */
+  private static final long DEFAULT_DURATION_MILLIS = 30_000;
+
+  /**
+   * Number of runs after which the mean duration becomes an exponential moving average, so the
+   * history follows the recent durations.
+   */
+  private static final int MAX_RUNS_IN_MEAN = 10;
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private static TestHistory instance;
+
+  private final Map<String, Entry> entries;
+
+  private TestHistory(Map<String, Entry> entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * Gets the history of the suite, loading it on the first call.
+   * @return TestHistory
+   */
+  public static synchronized TestHistory getInstance() {
+    if (null == instance) {
+      instance = load(getHistoryFile());
+    }
+    return instance;
+  }
+
+  /**
+   * Gets the file the history is read from.
+   * @return Path
+   */
+  public static Path getHistoryFile() {
+    return Paths.get(System.getProperty("testHistory",
+        Paths.get(System.getProperty("user.dir"), DEFAULT_HISTORY_FILE).toString()));
+  }
+
+  /**
+   * Loads a history file. A missing or unreadable file gives an empty history.
+   * @param file the history file
+   * @return TestHistory
+   */
+  public static TestHistory load(@NotNull Path file) {
+    if (!Files.exists(file)) {
+      logger.debug("No test history in {}", file);
+      return new TestHistory(new TreeMap<>());
+    }
+    try {
+      Map<String, Entry> entries = mapper.readValue(file.toFile(),
+          new TypeReference<TreeMap<String, Entry>>() { });
+      logger.debug("Loaded the history of {} tests from {}", entries.size(), file);
+      return new TestHistory(entries);
+    } catch (IOException e) {
+      logger.error("Unable to read the test history {}", file, e);
+      return new TestHistory(new TreeMap<>());
+    }
+  }
+
+  /**
+   * Gets the expected duration of a test method.
+   * @param methodName the qualified name of the test method
+   * @return the mean duration in milliseconds, or a default duration if it never ran
+   */
+  public synchronized long getDurationMillis(@NotNull String methodName) {
+    return Math.round(getMeanMillis(methodName));
+  }
+
+  private double getMeanMillis(String methodName) {
+    Entry entry = entries.get(methodName);
+    return null == entry ? DEFAULT_DURATION_MILLIS : entry.meanMillis;
+  }
+
+  /**
+   * Gets the rate of runs of a test method that failed and were retried.
+   * @param methodName the qualified name of the test method
+   * @return between 0 and 1, 0 if it never ran
+   */
+  public synchronized double getRetryRate(@NotNull String methodName) {
+    Entry entry = entries.get(methodName);
+    return null == entry || entry.runs == 0 ? 0 : (double) entry.retries / entry.runs;
+  }
+
+  /**
+   * Gets the expected duration of a test method including its retries: a run fails and is retried
+   * with the retry rate of the method, up to the retry limit.
+   * @param methodName the qualified name of the test method
+   * @param retryLimit the maximum number of retries of a test
+   * @return the expected duration in milliseconds
+   */
+  public synchronized long getExpectedDurationMillis(@NotNull String methodName, int retryLimit) {
+    double retryRate = getRetryRate(methodName);
+    double expectedRuns = 0;
+    double runProbability = 1;
+    for (int run = 0; run <= retryLimit; run++) {
+      expectedRuns += runProbability;
+      runProbability *= retryRate;
+    }
+    return Math.round(getMeanMillis(methodName) * expectedRuns);
+  }
+
+  /**
+   * Records a run of a test method.
+   * @param methodName the qualified name of the test method
+   * @param durationMillis the duration of the run
+   * @param retried true if the run failed and the test was retried
+   */
+  public synchronized void record(@NotNull String methodName, long durationMillis,
+                                  boolean retried) {
+    Entry entry = entries.computeIfAbsent(methodName, name -> new Entry());
+    entry.runs++;
+    // in double, an integer division would drop the changes smaller than the divisor
+    entry.meanMillis += (durationMillis - entry.meanMillis)
+        / Math.min(entry.runs, MAX_RUNS_IN_MEAN);
+    if (retried) {
+      entry.retries++;
+    }
+  }
+
+  /**
+   * Takes the entries of another history that was loaded from this one and then recorded more
+   * runs, such as the history written by each shard of a sharded run.
+   * @param other the history to merge
+   */
+  public synchronized void merge(@NotNull TestHistory other) {
+    other.entries.forEach((methodName, otherEntry) -> {
+      Entry entry = entries.get(methodName);
+      if (null == entry || otherEntry.runs > entry.runs) {
+        entries.put(methodName, otherEntry);
+      }
+    });
+  }
+
+  /**
+   * Writes the history to the given file, replacing it atomically.
+   * @param file the history file
+   */
+  public synchronized void save(@NotNull Path file) {
+    try {
+      Path directory = file.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      Path temporaryFile = Files.createTempFile(directory, "test-history", ".tmp");
+      mapper.writerWithDefaultPrettyPrinter().writeValue(temporaryFile.toFile(), entries);
+      Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.error("Unable to write the test history {}", file, e);
+    }
+  }
+
+  /**
+   * Writes the history to -DtestHistoryOut, or to the file it was read from.
+   */
+  public void save() {
+    save(Paths.get(System.getProperty("testHistoryOut", getHistoryFile().toString())));
+  }
+
+  /**
+   * Gets the history file written by the JVM of a shard.
+   * @param shardDirectory the output directory of the shard
+   * @return Path
+   */
+  public static Path getShardHistoryFile(@NotNull Path shardDirectory) {
+    return shardDirectory.resolve("test-history.json");
+  }
+
+  /**
+   * Duration and retries of a test method.
+   */
+  public static final class Entry {
+
+    @JsonProperty("runs")
+    private long runs;
+
+    @JsonProperty("meanMillis")
+    private double meanMillis;
+
+    @JsonProperty("retries")
+    private long retries;
+  }
+}
@@ -0,0 +1,38 @@
+package base;
+
+import org.jetbrains.annotations.NotNull;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+/**
+ * Records the duration of every test run in the TestHistory, and saves the history when the tests
+ * finish.
+ */
+public class TestHistoryListener implements ITestListener {
+
+  @Override
+  public void onTestSuccess(ITestResult result) {
+    record(result);
+  }
+
+  @Override
+  public void onTestFailure(ITestResult result) {
+    record(result);
+  }
+
+  @Override
+  public void onTestSkipped(ITestResult result) {
+    record(result);
+  }
+
+  @Override
+  public void onFinish(ITestContext context) {
+    TestHistory.getInstance().save();
+  }
+
+  private static void record(@NotNull ITestResult result) {
+    TestHistory.getInstance().record(result.getMethod().getQualifiedName(),
+        result.getEndMillis() - result.getStartMillis(), result.wasRetried());
+  }
+}
@@ -1,11 +1,16 @@
 package blockchain;
 
 import base.TestBase;
+import driver.DriverBase;
+import driver.SessionSnapshot;
+import driver.SessionSnapshotCache;
 import org.testng.Assert;
+import org.testng.SkipException;
 import org.testng.annotations.Test;
 import pageobjects.blockchain.pages.BlockchainHomePage;
 import pageobjects.blockchain.pages.BlockchainLoginPage;
 import utils.TestAccount;
+import utils.TestAccountLease;
 import utils.TestAccountProvider;
 
 @Test(groups = {"full-regression"})
@@ -19,22 +24,50 @@ public class BlockchainDemoTest extends TestBase {
   public void blockchainDemoTest() {
 
     // Arrange
-    TestAccount account = TestAccountProvider.getAccount();
+    try (TestAccountLease lease = TestAccountProvider.lease()) {
+      TestAccount account = lease.account();
 
-    // Act
-    BlockchainLoginPage blockchainLoginPage = new BlockchainLoginPage();
-    blockchainLoginPage.get();
+      // Act
+      BlockchainLoginPage blockchainLoginPage = new BlockchainLoginPage();
+      blockchainLoginPage.get();
 
-    BlockchainHomePage blockchainHomePage = blockchainLoginPage
-        .enterWalletId(account.walletId())
-        .enterPassword(account.password())
-        .clickLoginButton();
+      BlockchainHomePage blockchainHomePage = blockchainLoginPage
+          .enterWalletId(account.walletId())
+          .enterPassword(account.password())
+          .clickLoginButton();
 
-    // Assert
-    Assert.assertTrue(blockchainHomePage.isHomePage(), "Home page was not displayed");
+      // Assert
+      Assert.assertTrue(blockchainHomePage.isHomePage(), "Home page was not displayed");
+    }
   }
 
+  @Test(
+      groups = {"demo"},
+      description = "Login into Blockchain Wallet filling the form with a single script, then "
+          + "restore the session",
+      retryAnalyzer = TestBase.RetryAnalyzer.class
+  )
+  public void blockchainLoginAsTest() {
 
+    // Arrange
+    try (TestAccountLease lease = TestAccountProvider.lease()) {
+      TestAccount account = lease.account();
 
+      // Act & Assert
+      BlockchainHomePage blockchainHomePage = new BlockchainLoginPage().loginAs(account);
+      Assert.assertTrue(blockchainHomePage.isHomePage(), "Home page was not displayed");
 
+      SessionSnapshot snapshot = SessionSnapshotCache.get(account.walletId());
+      if (null == snapshot) {
+        throw new SkipException("The session snapshots are disabled, -DsessionSnapshots=false");
+      }
+      // logged out, only a restored session reaches the home page without the login form
+      SessionSnapshot.clear(DriverBase.getDriver());
+      BlockchainHomePage restoredHomePage = new BlockchainLoginPage().loginAs(account);
+      Assert.assertTrue(restoredHomePage.isHomePage(),
+          "Home page was not displayed after restoring the session");
+      Assert.assertSame(SessionSnapshotCache.get(account.walletId()), snapshot,
+          "The session snapshot was rejected and the login form was used");
+    }
+  }
 }
@@ -0,0 +1,39 @@
+package blockchain;
+
+import base.StubSite;
+import base.TestBase;
+import driver.BrowserType;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+import pageobjects.blockchain.pages.BlockchainLoginPage;
+
+@Test(groups = {"stub"})
+public class NetworkBlockingTest extends TestBase {
+
+  @Test(description = "The stub login page loads without its tracker, images and fonts")
+  public void blockedResourcesAreNotRequested() {
+
+    // Arrange
+    if (!"stub".equals(System.getProperty("env"))) {
+      throw new SkipException("The request counts are only known for the stub site, -Denv=stub");
+    }
+    long loginPageRequests = StubSite.getRequestCount("/login.html");
+
+    // Act
+    new BlockchainLoginPage().get();
+
+    // Assert
+    Assert.assertTrue(StubSite.getRequestCount("/login.html") > loginPageRequests,
+        "The login page was not requested");
+    Assert.assertEquals(StubSite.getRequestCount("/static/logo.png"), 0,
+        "The blocked image was requested");
+    Assert.assertEquals(StubSite.getRequestCount("/static/stub.woff"), 0,
+        "The blocked font was requested");
+    // Firefox has no DevTools endpoint to block URLs, only resource types
+    if (getBrowserType() != BrowserType.FIREFOX) {
+      Assert.assertEquals(StubSite.getRequestCount("/analytics/tracker.js"), 0,
+          "The denied tracker was requested");
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package driver;
+
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openqa.selenium.WebDriverException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the hub list parsing and of the queue of GridDispatcher, without Selenium Grid.
+ */
+@Test(groups = {"full-regression", "unit"})
+public class GridDispatcherTest {
+
+  private static final Duration QUEUE_TIMEOUT = Duration.ofSeconds(10);
+
+  @Test(description = "Hubs get their own capacity or the default one")
+  public void parseHubsWithCapacities() {
+    List<GridDispatcher.Hub> hubs = GridDispatcher.parseHubs(
+        " http://grid-a:4444/wd/hub=8, ,http://grid-b:4444/wd/hub", 4);
+
+    Assert.assertEquals(hubs.size(), 2);
+    Assert.assertEquals(hubs.get(0).toString(), "http://grid-a:4444/wd/hub (0/8)");
+    Assert.assertEquals(hubs.get(1).toString(), "http://grid-b:4444/wd/hub (0/4)");
+  }
+
+  @Test(description = "An = in the URL that is not followed by a capacity is kept in the URL")
+  public void parseHubsWithQuery() {
+    List<GridDispatcher.Hub> hubs = GridDispatcher.parseHubs("http://grid:4444/wd/hub?a=b", 2);
+
+    Assert.assertEquals(hubs.get(0).toString(), "http://grid:4444/wd/hub?a=b (0/2)");
+  }
+
+  @Test(description = "Invalid hub URLs and capacities are rejected",
+      expectedExceptions = IllegalArgumentException.class)
+  public void parseHubsWithInvalidUrl() {
+    GridDispatcher.parseHubs("grid-a:4444", 4);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void parseHubsWithZeroCapacity() {
+    GridDispatcher.parseHubs("http://grid-a:4444/wd/hub=0", 4);
+  }
+
+  @Test(description = "New sessions go to the hub with the lowest share of its capacity in use")
+  public void acquireLeastLoadedHub() throws Exception {
+    GridDispatcher.Hub large = new GridDispatcher.Hub(new URL("http://grid-a:4444/wd/hub"), 4);
+    GridDispatcher.Hub small = new GridDispatcher.Hub(new URL("http://grid-b:4444/wd/hub"), 2);
+    GridDispatcher dispatcher = new GridDispatcher(Arrays.asList(large, small), QUEUE_TIMEOUT);
+
+    List<GridDispatcher.Hub> acquired = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      acquired.add(dispatcher.acquire());
+    }
+
+    Assert.assertEquals(Collections.frequency(acquired, large), 4);
+    Assert.assertEquals(Collections.frequency(acquired, small), 2);
+    Assert.assertSame(acquired.get(0), large);
+    Assert.assertSame(acquired.get(1), small);
+  }
+
+  @Test(description = "Session requests are served in arrival order when the hubs are full")
+  public void queueIsFirstComeFirstServed() throws Exception {
+    GridDispatcher.Hub hub = new GridDispatcher.Hub(new URL("http://grid:4444/wd/hub"), 1);
+    GridDispatcher dispatcher = new GridDispatcher(Collections.singletonList(hub), QUEUE_TIMEOUT);
+    dispatcher.acquire();
+
+    List<String> served = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> requests = new ArrayList<>();
+    for (String name : Arrays.asList("first", "second", "third")) {
+      Thread request = new Thread(() -> {
+        dispatcher.acquire();
+        served.add(name);
+      }, name);
+      request.start();
+      awaitWaiting(request);
+      requests.add(request);
+    }
+
+    for (int i = 0; i < requests.size(); i++) {
+      Assert.assertEquals(served.size(), i);
+      dispatcher.release(hub);
+      requests.get(i).join(TimeUnit.SECONDS.toMillis(5));
+      Assert.assertFalse(requests.get(i).isAlive(), requests.get(i).getName() + " not served");
+    }
+    Assert.assertEquals(served, Arrays.asList("first", "second", "third"));
+  }
+
+  @Test(description = "A session request fails when no hub is free after the queue timeout",
+      expectedExceptions = WebDriverException.class)
+  public void queueTimeout() throws Exception {
+    GridDispatcher.Hub hub = new GridDispatcher.Hub(new URL("http://grid:4444/wd/hub"), 1);
+    GridDispatcher dispatcher = new GridDispatcher(Collections.singletonList(hub),
+        Duration.ofMillis(100));
+    dispatcher.acquire();
+
+    dispatcher.acquire();
+  }
+
+  /**
+   * Waits until the thread waits in the queue of the dispatcher.
+   */
+  private static void awaitWaiting(Thread thread) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (thread.getState() != Thread.State.TIMED_WAITING) {
+      Assert.assertTrue(System.nanoTime() < deadline, thread.getName() + " is not queued");
+      Thread.sleep(5);
+    }
+  }
+}
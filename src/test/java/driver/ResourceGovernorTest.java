@@ -0,0 +1,37 @@
+package driver;
+
+import java.util.concurrent.TimeUnit;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the measures of ResourceGovernor on the machine running the tests, without browsers.
+ */
+@Test(groups = {"full-regression", "unit"})
+public class ResourceGovernorTest {
+
+  @Test(description = "The available memory of the machine is measured")
+  public void availableMemoryIsMeasured() {
+    Assert.assertTrue(ResourceGovernor.getInstance().getAvailableBytes() > 0);
+  }
+
+  @Test(description = "The free memory, used without /proc/meminfo, is measured")
+  public void freeMemoryIsMeasured() {
+    Assert.assertTrue(ResourceGovernor.getInstance().getFreeMemoryBytes() > 0);
+  }
+
+  @Test(description = "The first browser is admitted after one measure, without waiting")
+  public void firstBrowserIsAdmitted() {
+    ResourceGovernor governor = ResourceGovernor.getInstance();
+    SessionKey sessionKey = new SessionKey(BrowserType.CHROME, ExecutionProfile.HEADLESS,
+        new DesiredCapabilities());
+
+    final long start = System.nanoTime();
+    governor.admit(sessionKey);
+    governor.finishStart();
+
+    Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5),
+        "The first browser waited to be admitted");
+  }
+}
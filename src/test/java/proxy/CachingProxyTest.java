@@ -0,0 +1,180 @@
+package proxy;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the caching rules of CachingProxy, with a local HTTP server as origin.
+ */
+@Test(groups = {"full-regression", "unit"})
+public class CachingProxyTest {
+
+  private static final String ETAG = "\"v1\"";
+
+  private final Map<String, AtomicInteger> originRequests = new ConcurrentHashMap<>();
+
+  private final List<String> conditionalRequests = new CopyOnWriteArrayList<>();
+
+  private HttpServer origin;
+
+  private Path cacheDirectory;
+
+  private CachingProxy proxy;
+
+  private HttpClient client;
+
+  /**
+   * Starts the origin server. Each path is served with the Cache-Control header named after it.
+   */
+  @BeforeMethod(alwaysRun = true)
+  public void startOrigin() throws IOException {
+    originRequests.clear();
+    conditionalRequests.clear();
+    origin = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    origin.createContext("/fresh/", exchange -> respond(exchange, "max-age=60", null));
+    origin.createContext("/revalidated/", exchange -> respond(exchange, "no-cache", null));
+    origin.createContext("/vary-encoding/",
+        exchange -> respond(exchange, "max-age=60", "Accept-Encoding"));
+    origin.createContext("/vary-agent/",
+        exchange -> respond(exchange, "max-age=60", "User-Agent"));
+    origin.start();
+    cacheDirectory = Files.createTempDirectory("proxy-cache");
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void stopOrigin() {
+    if (null != proxy) {
+      proxy.stop(cacheDirectory.resolve("metrics"));
+      proxy = null;
+    }
+    origin.stop(0);
+    FileUtils.deleteQuietly(cacheDirectory.toFile());
+  }
+
+  @Test(description = "A fresh response is served from the cache")
+  public void freshResponseIsServedFromCache() throws Exception {
+    startProxy(1024 * 1024);
+
+    Assert.assertEquals(get("/fresh/a"), "/fresh/a");
+    Assert.assertEquals(get("/fresh/a"), "/fresh/a");
+
+    Assert.assertEquals(getOriginRequests("/fresh/a"), 1);
+    Assert.assertEquals(proxy.getMetrics().get("hits"), 1L);
+    Assert.assertEquals(proxy.getMetrics().get("misses"), 1L);
+  }
+
+  @Test(description = "A stale response is revalidated with its ETag and served from the cache")
+  public void staleResponseIsRevalidated() throws Exception {
+    startProxy(1024 * 1024);
+
+    Assert.assertEquals(get("/revalidated/a"), "/revalidated/a");
+    Assert.assertEquals(get("/revalidated/a"), "/revalidated/a");
+
+    Assert.assertEquals(getOriginRequests("/revalidated/a"), 2);
+    Assert.assertEquals(conditionalRequests, Collections.singletonList("/revalidated/a"));
+    Assert.assertEquals(proxy.getMetrics().get("revalidations"), 1L);
+  }
+
+  @Test(description = "The least recently used response is evicted when the cache is full")
+  public void leastRecentlyUsedResponseIsEvicted() throws Exception {
+    // room for two of the bodies, which are 8 bytes long
+    startProxy(20);
+
+    get("/fresh/a");
+    get("/fresh/b");
+    // a is now more recently used than b
+    get("/fresh/a");
+    get("/fresh/c");
+    get("/fresh/a");
+    get("/fresh/b");
+
+    Assert.assertEquals(getOriginRequests("/fresh/a"), 1);
+    Assert.assertEquals(getOriginRequests("/fresh/b"), 2);
+    Assert.assertEquals(getOriginRequests("/fresh/c"), 1);
+    Assert.assertEquals(proxy.getMetrics().get("evictions"), 2L);
+  }
+
+  @Test(description = "Only the responses that vary on Accept-Encoding are stored")
+  public void responsesVaryingOnOtherHeadersAreNotStored() throws Exception {
+    startProxy(1024 * 1024);
+
+    get("/vary-encoding/a");
+    get("/vary-encoding/a");
+    get("/vary-agent/a");
+    get("/vary-agent/a");
+
+    Assert.assertEquals(getOriginRequests("/vary-encoding/a"), 1);
+    Assert.assertEquals(getOriginRequests("/vary-agent/a"), 2);
+  }
+
+  private void startProxy(long maxBytes) throws IOException {
+    proxy = new CachingProxy(new ProxyCache(cacheDirectory.resolve("responses"), maxBytes), false,
+        null, Collections.emptyList());
+    proxy.start(0);
+    String[] address = proxy.getSeleniumProxy().getHttpProxy().split(":");
+    client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .proxy(ProxySelector.of(new InetSocketAddress(address[0], Integer.parseInt(address[1]))))
+        .build();
+  }
+
+  private String get(String path) throws IOException, InterruptedException {
+    URI uri = URI.create("http://localhost:" + origin.getAddress().getPort() + path);
+    HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).build(),
+        HttpResponse.BodyHandlers.ofString());
+    Assert.assertEquals(response.statusCode(), 200, path);
+    return response.body();
+  }
+
+  private int getOriginRequests(String path) {
+    AtomicInteger count = originRequests.get(path);
+    return null == count ? 0 : count.get();
+  }
+
+  /**
+   * Answers with the path as body, and with 304 to the requests that have the ETag.
+   */
+  private void respond(HttpExchange exchange, String cacheControl, String vary)
+      throws IOException {
+    String path = exchange.getRequestURI().getPath();
+    originRequests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+    exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+    exchange.getResponseHeaders().add("ETag", ETAG);
+    if (null != vary) {
+      exchange.getResponseHeaders().add("Vary", vary);
+    }
+    try (OutputStream body = exchange.getResponseBody()) {
+      if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        conditionalRequests.add(path);
+        exchange.sendResponseHeaders(304, -1);
+        return;
+      }
+      byte[] content = path.getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, content.length);
+      body.write(content);
+    }
+  }
+}
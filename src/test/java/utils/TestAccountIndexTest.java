@@ -0,0 +1,77 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests of the indexes of TestAccountIndex, with small accounts files.
+ */
+@Test(groups = {"full-regression", "unit"})
+public class TestAccountIndexTest {
+
+  private Path file;
+
+  @AfterMethod(alwaysRun = true)
+  public void deleteFile() throws IOException {
+    if (null != file) {
+      Files.deleteIfExists(file);
+      file = null;
+    }
+  }
+
+  @Test(description = "Accounts are found by email, wallet and tag, and read when needed")
+  public void indexAccounts() throws IOException {
+    write("[{\"email\":\"a@test\",\"walletId\":\"wallet-a\",\"tags\":[\"fast\",\"slow\"]},"
+        + "{\"email\":\"b@test\",\"extra\":{\"tags\":[1]},\"tags\":[\"slow\"],"
+        + "\"walletId\":\"wallet-b\"},"
+        + "{\"email\":\"c@test\",\"tags\":null}]");
+
+    for (boolean memoryMapped : new boolean[] {false, true}) {
+      try (TestAccountIndex index = TestAccountIndex.open(file, memoryMapped)) {
+        Assert.assertEquals(index.size(), 3);
+        Assert.assertEquals(index.findByEmail("b@test"), 1);
+        Assert.assertEquals(index.findByWalletId("wallet-b"), 1);
+        Assert.assertEquals(index.findByTag("fast"), BitSet.valueOf(new long[] {0b01}));
+        Assert.assertEquals(index.findByTag("slow"), BitSet.valueOf(new long[] {0b11}));
+        Assert.assertEquals(index.get(1).tags(), Arrays.asList("slow"));
+        Assert.assertEquals(index.get(2).email(), "c@test");
+      }
+    }
+  }
+
+  @Test(description = "A file with a tag that is an object is rejected",
+      expectedExceptions = IOException.class)
+  public void rejectObjectTag() throws IOException {
+    write("[{\"email\":\"a@test\",\"tags\":[\"fast\",{\"x\":[1,2]},\"slow\"]}]");
+
+    TestAccountIndex.open(file, false).close();
+  }
+
+  @Test(description = "A file with a tag that is a number is rejected",
+      expectedExceptions = IOException.class)
+  public void rejectNumberTag() throws IOException {
+    write("[{\"email\":\"a@test\",\"tags\":[\"fast\",1]}]");
+
+    TestAccountIndex.open(file, false).close();
+  }
+
+  @Test(description = "A file with tags that are not an array is rejected",
+      expectedExceptions = IOException.class)
+  public void rejectTagsThatAreNotAnArray() throws IOException {
+    write("[{\"email\":\"a@test\",\"tags\":\"fast\"}]");
+
+    TestAccountIndex.open(file, false).close();
+  }
+
+  private void write(String accounts) throws IOException {
+    file = Files.createTempFile("test-accounts", ".json");
+    Files.write(file, accounts.getBytes(StandardCharsets.UTF_8));
+  }
+}
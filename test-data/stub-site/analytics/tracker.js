@@ -0,0 +1,2 @@
+// stand-in for the analytics of the real site, the tests pass without it
+window.stubTracker = {loadedAt: Date.now()};